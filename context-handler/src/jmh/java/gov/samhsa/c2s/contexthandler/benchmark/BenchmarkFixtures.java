@@ -0,0 +1,146 @@
+package gov.samhsa.c2s.contexthandler.benchmark;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.samhsa.c2s.common.marshaller.SimpleMarshallerImpl;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.config.FhirProperties;
+import gov.samhsa.c2s.contexthandler.service.EnforcementMetrics;
+import gov.samhsa.c2s.contexthandler.service.PolicyCombiningAlgIdValidatorImpl;
+import gov.samhsa.c2s.contexthandler.service.PolicyDecisionPointServiceImpl;
+import gov.samhsa.c2s.contexthandler.service.PolicyProvider;
+import gov.samhsa.c2s.contexthandler.service.PolicySetCache;
+import gov.samhsa.c2s.contexthandler.service.PolicyValidator;
+import gov.samhsa.c2s.contexthandler.service.XacmlPolicySetService;
+import gov.samhsa.c2s.contexthandler.service.XacmlPolicySetServiceImpl;
+import gov.samhsa.c2s.contexthandler.service.dto.PatientIdDto;
+import gov.samhsa.c2s.contexthandler.service.dto.PolicyContainerDto;
+import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
+import gov.samhsa.c2s.contexthandler.service.dto.SubjectPurposeOfUse;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
+import gov.samhsa.c2s.contexthandler.service.util.PolicyCombiningAlgIds;
+import gov.samhsa.c2s.contexthandler.service.util.RequestGenerator;
+import org.apache.commons.io.IOUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Fixed inputs and hand-wired services shared by the benchmarks, so that runs are comparable with each other.
+ * <p>
+ * The consents are copies of the {@code sampleXacmlTemplate.xml} test resource that differ only in their policy id.
+ * The request matches the consent, so every evaluation ends in a PERMIT decision with obligations.
+ */
+final class BenchmarkFixtures {
+
+    static final String PATIENT_ID_ROOT = "PATIENT_ID_ROOT";
+    static final String PATIENT_ID_EXTENSION = "PATIENT_ID_EXTENSION";
+    static final String RECIPIENT_NPI = "4444444444";
+    static final String INTERMEDIARY_NPI = "1111111111";
+
+    private static final String CONSENT_XACML_FILE_NAME = "sampleXacmlTemplate.xml";
+    private static final String CONSENT_POLICY_ID = "PolicyId=\"consentReferenceId\"";
+
+    private BenchmarkFixtures() {
+    }
+
+    static ContextHandlerProperties contextHandlerProperties() {
+        final ContextHandlerProperties.Pid pid = new ContextHandlerProperties.Pid();
+        pid.setType("ISO");
+
+        final ContextHandlerProperties.PdpRequest.Resource resource = new ContextHandlerProperties.PdpRequest.Resource();
+        resource.setTypeCode("34133-9");
+        resource.setStatus("urn:oasis:names:tc:ebxml-regrep:StatusType:Approved");
+        final ContextHandlerProperties.PdpRequest.Action action = new ContextHandlerProperties.PdpRequest.Action();
+        action.setActionId("pepaccess");
+        final ContextHandlerProperties.PdpRequest pdpRequest = new ContextHandlerProperties.PdpRequest();
+        pdpRequest.setResource(resource);
+        pdpRequest.setAction(action);
+
+        final ContextHandlerProperties contextHandlerProperties = new ContextHandlerProperties();
+        contextHandlerProperties.setPid(pid);
+        contextHandlerProperties.setPdpRequest(pdpRequest);
+        return contextHandlerProperties;
+    }
+
+    static XacmlRequestDto xacmlRequest() {
+        return XacmlRequestDto.builder()
+                .recipientNpi(RECIPIENT_NPI)
+                .intermediaryNpi(INTERMEDIARY_NPI)
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root(PATIENT_ID_ROOT).extension(PATIENT_ID_EXTENSION).build())
+                .messageId("benchmark")
+                .build();
+    }
+
+    static byte[] consentXacml() {
+        try (InputStream inputStream = BenchmarkFixtures.class.getClassLoader()
+                .getResourceAsStream(CONSENT_XACML_FILE_NAME)) {
+            return IOUtils.toByteArray(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static PolicyContainerDto consents(int consentCount) {
+        final String consentXacml = new String(consentXacml(), StandardCharsets.UTF_8);
+        final List<PolicyDto> policies = new ArrayList<>(consentCount);
+        for (int i = 0; i < consentCount; i++) {
+            final String policyId = String.format("consent-%03d", i);
+            final PolicyDto policy = new PolicyDto();
+            policy.setId(policyId);
+            policy.setPolicy(consentXacml.replace(CONSENT_POLICY_ID, "PolicyId=\"" + policyId + "\"")
+                    .getBytes(StandardCharsets.UTF_8));
+            policies.add(policy);
+        }
+        return PolicyContainerDto.builder().policies(policies).build();
+    }
+
+    static RequestGenerator requestGenerator(ContextHandlerProperties contextHandlerProperties) {
+        return new RequestGenerator(new SimpleMarshallerImpl(), contextHandlerProperties, new FhirProperties());
+    }
+
+    static XacmlPolicySetService xacmlPolicySetService(ContextHandlerProperties contextHandlerProperties) {
+        final PolicyCombiningAlgIdValidatorImpl policyCombiningAlgIdValidator = new PolicyCombiningAlgIdValidatorImpl();
+        for (PolicyCombiningAlgIds policyCombiningAlgId : PolicyCombiningAlgIds.values()) {
+            policyCombiningAlgIdValidator.getCombiningAlgs()
+                    .put(policyCombiningAlgId.name(), policyCombiningAlgId.getUrn());
+        }
+
+        final XacmlPolicySetServiceImpl xacmlPolicySetService = new XacmlPolicySetServiceImpl();
+        ReflectionTestUtils.setField(xacmlPolicySetService, "policyCombiningAlgIdValidator", policyCombiningAlgIdValidator);
+        ReflectionTestUtils.setField(xacmlPolicySetService, "policySetCache", new PolicySetCache(contextHandlerProperties));
+        ReflectionTestUtils.setField(xacmlPolicySetService, "policyValidator", new PolicyValidator(contextHandlerProperties));
+        ReflectionTestUtils.setField(xacmlPolicySetService, "enforcementMetrics", enforcementMetrics());
+        return xacmlPolicySetService;
+    }
+
+    static PolicyDecisionPointServiceImpl policyDecisionPointService(ContextHandlerProperties contextHandlerProperties,
+                                                                     PolicyProvider policyProvider) {
+        final PolicyDecisionPointServiceImpl policyDecisionPointService = new PolicyDecisionPointServiceImpl();
+        ReflectionTestUtils.setField(policyDecisionPointService, "policyProvider", policyProvider);
+        ReflectionTestUtils.setField(policyDecisionPointService, "requestGenerator", requestGenerator(contextHandlerProperties));
+        ReflectionTestUtils.setField(policyDecisionPointService, "auditClient", Optional.empty());
+        ReflectionTestUtils.setField(policyDecisionPointService, "enforcementMetrics", enforcementMetrics());
+        policyDecisionPointService.afterPropertiesSet();
+        return policyDecisionPointService;
+    }
+
+    static EnforcementMetrics enforcementMetrics() {
+        return new EnforcementMetrics(new MetricRegistry());
+    }
+
+    /**
+     * Serves the same consents for every request, like the PolicyProviderStub of the integration tests.
+     */
+    static PolicyProvider inMemoryPolicyProvider(XacmlPolicySetService xacmlPolicySetService, PolicyContainerDto consents) {
+        return xacmlRequest -> Collections.singletonList(xacmlPolicySetService.getPoliciesCombinedAsPolicySet(
+                xacmlRequest, consents, PolicyCombiningAlgIds.DENY_OVERRIDES.getUrn()));
+    }
+}
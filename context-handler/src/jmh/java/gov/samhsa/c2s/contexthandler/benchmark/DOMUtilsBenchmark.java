@@ -0,0 +1,57 @@
+package gov.samhsa.c2s.contexthandler.benchmark;
+
+import gov.samhsa.c2s.contexthandler.service.util.DOMUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.w3c.dom.Document;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing a consent into a DOM document and serializing it back, single-threaded and from several threads.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DOMUtilsBenchmark {
+
+    private byte[] consentXacml;
+    private Document consentDocument;
+
+    @Setup
+    public void setUp() {
+        consentXacml = BenchmarkFixtures.consentXacml();
+        consentDocument = DOMUtils.bytesToDocument(consentXacml);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public Document bytesToDocument() {
+        return DOMUtils.bytesToDocument(consentXacml);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public byte[] documentToBytes() {
+        return DOMUtils.documentToBytes(consentDocument);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(8)
+    public Document bytesToDocumentThroughput8Threads() {
+        return DOMUtils.bytesToDocument(consentXacml);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(8)
+    public byte[] documentToBytesThroughput8Threads() {
+        return DOMUtils.documentToBytes(consentDocument);
+    }
+}
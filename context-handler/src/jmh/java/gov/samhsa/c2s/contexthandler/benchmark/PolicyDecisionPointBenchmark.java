@@ -0,0 +1,76 @@
+package gov.samhsa.c2s.contexthandler.benchmark;
+
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.service.PolicyDecisionPointService;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlResponseDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a complete PDP evaluation, from request generation to decision, against an in-memory policy provider.
+ * <p>
+ * The multi-threaded benchmarks run the same evaluation from several threads at once; their throughput stops scaling
+ * with the thread count wherever the evaluation serializes on a shared lock.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PolicyDecisionPointBenchmark {
+
+    @Param({"1", "10"})
+    private int consentCount;
+
+    @Param({"true", "false"})
+    private boolean policySetCacheEnabled;
+
+    private PolicyDecisionPointService policyDecisionPointService;
+    private XacmlRequestDto xacmlRequest;
+
+    @Setup
+    public void setUp() {
+        final ContextHandlerProperties contextHandlerProperties = BenchmarkFixtures.contextHandlerProperties();
+        contextHandlerProperties.getPolicySetCache().setEnabled(policySetCacheEnabled);
+
+        policyDecisionPointService = BenchmarkFixtures.policyDecisionPointService(contextHandlerProperties,
+                BenchmarkFixtures.inMemoryPolicyProvider(
+                        BenchmarkFixtures.xacmlPolicySetService(contextHandlerProperties),
+                        BenchmarkFixtures.consents(consentCount)));
+        xacmlRequest = BenchmarkFixtures.xacmlRequest();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public XacmlResponseDto evaluateRequest() {
+        return policyDecisionPointService.evaluateRequest(xacmlRequest);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(1)
+    public XacmlResponseDto evaluateRequestThroughput1Thread() {
+        return policyDecisionPointService.evaluateRequest(xacmlRequest);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(4)
+    public XacmlResponseDto evaluateRequestThroughput4Threads() {
+        return policyDecisionPointService.evaluateRequest(xacmlRequest);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(16)
+    public XacmlResponseDto evaluateRequestThroughput16Threads() {
+        return policyDecisionPointService.evaluateRequest(xacmlRequest);
+    }
+}
@@ -0,0 +1,81 @@
+package gov.samhsa.c2s.contexthandler.benchmark;
+
+import gov.samhsa.c2s.contexthandler.service.XacmlPolicySetService;
+import gov.samhsa.c2s.contexthandler.service.dto.PolicyContainerDto;
+import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
+import gov.samhsa.c2s.contexthandler.service.util.PolicyCombiningAlgIds;
+import org.herasaf.xacml.core.SyntaxException;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.herasaf.xacml.core.policy.PolicyMarshaller;
+import org.herasaf.xacml.core.simplePDP.initializers.InitializerExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures combining the consents of a request into one policy set: rebuilt from XML every time, combined from
+ * consents that are already unmarshalled, and served from the policy set cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PolicySetAssemblyBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int consentCount;
+
+    private XacmlPolicySetService xacmlPolicySetService;
+    private PolicyContainerDto consents;
+    private List<Evaluatable> unmarshalledConsents;
+    private XacmlRequestDto xacmlRequest;
+
+    @Setup
+    public void setUp() {
+        InitializerExecutor.runInitializers();
+
+        xacmlPolicySetService = BenchmarkFixtures.xacmlPolicySetService(BenchmarkFixtures.contextHandlerProperties());
+        consents = BenchmarkFixtures.consents(consentCount);
+        unmarshalledConsents = new ArrayList<>(consentCount);
+        for (PolicyDto consent : consents.getPolicies()) {
+            unmarshalledConsents.add(unmarshal(consent));
+        }
+        xacmlRequest = BenchmarkFixtures.xacmlRequest();
+    }
+
+    @Benchmark
+    public Evaluatable combinePolicies() {
+        return xacmlPolicySetService.getPoliciesCombinedAsPolicySet(consents, "benchmark",
+                PolicyCombiningAlgIds.DENY_OVERRIDES.getUrn());
+    }
+
+    @Benchmark
+    public Evaluatable combineUnmarshalledPolicies() {
+        return xacmlPolicySetService.getPoliciesCombinedAsPolicySet(unmarshalledConsents, "benchmark",
+                PolicyCombiningAlgIds.DENY_OVERRIDES);
+    }
+
+    @Benchmark
+    public Evaluatable combinePoliciesCached() {
+        return xacmlPolicySetService.getPoliciesCombinedAsPolicySet(xacmlRequest, consents,
+                PolicyCombiningAlgIds.DENY_OVERRIDES.getUrn());
+    }
+
+    private static Evaluatable unmarshal(PolicyDto consent) {
+        try {
+            return PolicyMarshaller.unmarshal(new ByteArrayInputStream(consent.getPolicy()));
+        } catch (SyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
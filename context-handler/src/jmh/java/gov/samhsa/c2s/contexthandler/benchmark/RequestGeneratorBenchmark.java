@@ -0,0 +1,50 @@
+package gov.samhsa.c2s.contexthandler.benchmark;
+
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
+import gov.samhsa.c2s.contexthandler.service.util.RequestGenerator;
+import org.herasaf.xacml.core.context.impl.RequestType;
+import org.herasaf.xacml.core.simplePDP.initializers.InitializerExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the direct PDP request construction with the pdpRequest.xsl transformation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestGeneratorBenchmark {
+
+    private RequestGenerator requestGenerator;
+    private XacmlRequestDto xacmlRequest;
+
+    @Setup
+    public void setUp() {
+        InitializerExecutor.runInitializers();
+
+        requestGenerator = BenchmarkFixtures.requestGenerator(BenchmarkFixtures.contextHandlerProperties());
+        xacmlRequest = BenchmarkFixtures.xacmlRequest();
+    }
+
+    @Benchmark
+    public RequestType generateRequest() {
+        return requestGenerator.generateRequest(xacmlRequest);
+    }
+
+    @Benchmark
+    public RequestType buildRequest() {
+        return requestGenerator.buildRequest(xacmlRequest);
+    }
+
+    @Benchmark
+    public RequestType transformRequest() {
+        return requestGenerator.transformRequest(xacmlRequest);
+    }
+}
@@ -18,10 +18,16 @@
 import gov.samhsa.c2s.common.marshaller.SimpleMarshallerImpl;
 import gov.samhsa.c2s.contexthandler.service.ConsentDtoFactoryImpl;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.cloud.sleuth.Tracer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
 import org.springframework.jdbc.support.lob.DefaultLobHandler;
 import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 public class ApplicationContextConfig {
@@ -67,6 +73,27 @@ public XmlTransformer xmlTransformer() {
         return new XmlTransformerImpl(simpleMarshaller());
     }
 
+    @Bean
+    public ContextPropagatingTaskDecorator contextPropagatingTaskDecorator(Optional<Tracer> tracer) {
+        return new ContextPropagatingTaskDecorator(tracer);
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor policyRetrievalExecutor(ContextHandlerProperties contextHandlerProperties,
+                                                          ContextPropagatingTaskDecorator taskDecorator) {
+        final ContextHandlerProperties.Async async = contextHandlerProperties.getAsync();
+        return boundedExecutor("policy-retrieval-", async.getRetrievalThreadPoolSize(),
+                async.getRetrievalQueueCapacity(), taskDecorator);
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor policyEvaluationExecutor(ContextHandlerProperties contextHandlerProperties,
+                                                           ContextPropagatingTaskDecorator taskDecorator) {
+        final ContextHandlerProperties.Async async = contextHandlerProperties.getAsync();
+        return boundedExecutor("policy-evaluation-", async.getEvaluationThreadPoolSize(),
+                async.getEvaluationQueueCapacity(), taskDecorator);
+    }
+
     @Bean
     public LobHandler lobHandler() {
         DefaultLobHandler defaultLobHandler = new DefaultLobHandler();
@@ -74,4 +101,17 @@ public LobHandler lobHandler() {
         return defaultLobHandler;
     }
 
+    private static ThreadPoolTaskExecutor boundedExecutor(String threadNamePrefix, int threadPoolSize,
+                                                          int queueCapacity, TaskDecorator taskDecorator) {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threadPoolSize);
+        executor.setMaxPoolSize(threadPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setTaskDecorator(taskDecorator);
+        // Reject when saturated, so that the requests fail fast with 503 instead of running on a servlet thread
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
 }
@@ -8,6 +8,7 @@
 import org.springframework.validation.annotation.Validated;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 @Configuration
@@ -27,12 +28,182 @@ public class ContextHandlerProperties {
     @NotBlank
     private String policyProvider;
 
+    @NotNull
+    @Valid
+    private PolicySetCache policySetCache = new PolicySetCache();
+
+    @NotNull
+    @Valid
+    private ConsentPolicyCache consentPolicyCache = new ConsentPolicyCache();
+
+    @NotNull
+    @Valid
+    private PolicyValidation policyValidation = new PolicyValidation();
+
+    @NotNull
+    @Valid
+    private Batch batch = new Batch();
+
+    @NotNull
+    @Valid
+    private Async async = new Async();
+
+    @NotNull
+    @Valid
+    private JdbcPolicyProvider jdbcPolicyProvider = new JdbcPolicyProvider();
+
+    @NotNull
+    @Valid
+    private AuditQueue auditQueue = new AuditQueue();
+
     @Data
     public static class Pid {
         @NotEmpty
         private String type;
     }
 
+    @Data
+    public static class PolicySetCache {
+        private boolean enabled = true;
+        @Min(1)
+        private long maximumSize = 1000;
+        @Min(1)
+        private long expireAfterWriteInSeconds = 300;
+    }
+
+    @Data
+    public static class ConsentPolicyCache {
+        private boolean enabled = true;
+        @Min(1)
+        private long maximumSize = 10000;
+        @Min(1)
+        private long expireAfterWriteInSeconds = 3600;
+    }
+
+    @Data
+    public static class PolicyValidation {
+        /**
+         * How often the policies are also checked against the XACML policy schema. A policy is valid when it can be
+         * unmarshalled, whether or not it is checked against the schema.
+         */
+        @NotNull
+        private Mode mode = Mode.OFF;
+        /**
+         * The maximum number of policy digests remembered in {@link Mode#ON_FIRST_SIGHT} mode.
+         */
+        @Min(1)
+        private long maximumSize = 10000;
+
+        /**
+         * How often a policy is checked against the XACML policy schema.
+         */
+        public enum Mode {
+            /**
+             * Policies are never checked against the schema.
+             */
+            OFF,
+            /**
+             * Policies are checked against the schema the first time their content is seen.
+             */
+            ON_FIRST_SIGHT,
+            /**
+             * Policies are checked against the schema every time they are combined.
+             */
+            ALWAYS
+        }
+    }
+
+    @Data
+    public static class Batch {
+        @Min(1)
+        private int maxRequests = 100;
+    }
+
+    @Data
+    public static class Async {
+        /**
+         * The number of threads that retrieve policies, which block on the policy provider.
+         */
+        @Min(1)
+        private int retrievalThreadPoolSize = 50;
+        @Min(0)
+        private int retrievalQueueCapacity = 1000;
+        /**
+         * The number of threads that evaluate requests, which are bound by the processors.
+         */
+        @Min(1)
+        private int evaluationThreadPoolSize = Runtime.getRuntime().availableProcessors();
+        @Min(0)
+        private int evaluationQueueCapacity = 1000;
+        /**
+         * The time after which a policy enforcement request, single or batch, fails with 503 Service Unavailable.
+         */
+        @Min(1)
+        private long timeoutInMs = 60000;
+    }
+
+    @Data
+    public static class JdbcPolicyProvider {
+        @NotNull
+        private QueryMode queryMode = QueryMode.RANGE;
+        @Min(1)
+        private int maxConsentSizeInBytes = 5 * 1024 * 1024;
+
+        public enum QueryMode {
+            /**
+             * Selects the consents with {@code like '<policy id prefix>%'}.
+             */
+            LIKE,
+            /**
+             * Selects the consents with a range on the policy id prefix.
+             */
+            RANGE
+        }
+    }
+
+    @Data
+    public static class AuditQueue {
+        @Min(1)
+        private int capacity = 10000;
+        /**
+         * The maximum number of events shipped by the worker in one batch.
+         */
+        @Min(1)
+        private int batchSize = 100;
+        @NotNull
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+        /**
+         * The maximum time a request waits for room in the queue in {@link OverflowPolicy#BLOCK} mode.
+         */
+        @Min(0)
+        private long blockTimeoutInMs = 100;
+        /**
+         * The maximum time to wait for the queued events to be shipped on shutdown.
+         */
+        @Min(0)
+        private long shutdownTimeoutInMs = 5000;
+        /**
+         * The maximum number of marshalled policies kept for auditing, by policy instance.
+         */
+        @Min(1)
+        private long payloadCacheMaximumSize = 1000;
+
+        public enum OverflowPolicy {
+            /**
+             * The new event is dropped.
+             */
+            DROP_NEWEST,
+            /**
+             * The oldest queued event is dropped to make room for the new one.
+             */
+            DROP_OLDEST,
+            /**
+             * The request waits for room in the queue up to the block timeout, then the new event is dropped.
+             */
+            BLOCK
+        }
+    }
+
     @Data
     public static class PdpRequest {
         @NotNull
@@ -43,6 +214,20 @@ public static class PdpRequest {
         @Valid
         private Action action;
 
+        @NotNull
+        private GenerationMode generationMode = GenerationMode.DIRECT;
+
+        public enum GenerationMode {
+            /**
+             * Builds the PDP request objects directly from the XACML request.
+             */
+            DIRECT,
+            /**
+             * Transforms the XACML request with pdpRequest.xsl and unmarshals the result.
+             */
+            XSL
+        }
+
         @Data
         public static class Resource {
             @NotEmpty
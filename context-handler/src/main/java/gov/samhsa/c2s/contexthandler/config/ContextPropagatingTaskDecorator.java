@@ -0,0 +1,47 @@
+package gov.samhsa.c2s.contexthandler.config;
+
+import org.slf4j.MDC;
+import org.springframework.cloud.sleuth.Tracer;
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Carries the trace and the MDC of the submitting thread over to the task, so that the logs of a policy enforcement
+ * keep the trace id of its request on every executor it passes through.
+ * <p>
+ * Sleuth does not instrument the {@link org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor} beans, so
+ * the span is continued by {@link Tracer#wrap(Runnable)} when tracing is enabled.
+ */
+public class ContextPropagatingTaskDecorator implements TaskDecorator {
+
+    private final Optional<Tracer> tracer;
+
+    public ContextPropagatingTaskDecorator(Optional<Tracer> tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        final Runnable traced = tracer.map(t -> t.wrap(runnable)).orElse(runnable);
+        final Map<String, String> contextMap = MDC.getCopyOfContextMap();
+        return () -> {
+            final Map<String, String> previous = MDC.getCopyOfContextMap();
+            setContextMap(contextMap);
+            try {
+                traced.run();
+            } finally {
+                setContextMap(previous);
+            }
+        };
+    }
+
+    private static void setContextMap(Map<String, String> contextMap) {
+        if (contextMap == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(contextMap);
+        }
+    }
+}
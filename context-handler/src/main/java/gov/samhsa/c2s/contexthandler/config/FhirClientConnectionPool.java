@@ -0,0 +1,91 @@
+package gov.samhsa.c2s.contexthandler.config;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pooled HTTP client of the FHIR client.
+ * <p>
+ * Connections are kept alive for the duration advertised by the server, or for the configured default when it
+ * advertises none, and connections that were idle longer than the configured timeout are evicted in the background.
+ * The leased, pending and available connection counts are published as actuator metrics under
+ * {@code http.fhir-client.pool}.
+ */
+public class FhirClientConnectionPool implements PublicMetrics, DisposableBean {
+
+    private static final String METRIC_PREFIX = "http.fhir-client.pool.";
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ScheduledExecutorService idleConnectionEvictor;
+
+    public FhirClientConnectionPool(FhirProperties fhirProperties) {
+        final FhirProperties.ConnectionPool properties = fhirProperties.getConnectionPool();
+
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(properties.getMaxTotal());
+        this.connectionManager.setDefaultMaxPerRoute(properties.getMaxPerRoute());
+
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setSocketTimeout(Integer.parseInt(fhirProperties.getClientSocketTimeoutInMs()))
+                .setConnectTimeout(properties.getConnectTimeoutInMs())
+                .setConnectionRequestTimeout(properties.getConnectionRequestTimeoutInMs())
+                .build();
+        final long defaultKeepAliveInMs = properties.getDefaultKeepAliveInMs();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? keepAlive : defaultKeepAliveInMs;
+                })
+                .build();
+
+        final long idleTimeoutInMs = properties.getIdleTimeoutInMs();
+        final long evictionIntervalInMs = properties.getIdleEvictionIntervalInMs();
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("fhir-client-evictor-");
+        threadFactory.setDaemon(true);
+        this.idleConnectionEvictor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.idleConnectionEvictor.scheduleWithFixedDelay(() -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeoutInMs, TimeUnit.MILLISECONDS);
+        }, evictionIntervalInMs, evictionIntervalInMs, TimeUnit.MILLISECONDS);
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final PoolStats stats = connectionManager.getTotalStats();
+        final List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "leased", stats.getLeased()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "pending", stats.getPending()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "available", stats.getAvailable()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "max", stats.getMax()));
+        return metrics;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        idleConnectionEvictor.shutdownNow();
+        httpClient.close();
+    }
+}
@@ -6,6 +6,8 @@
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 @Configuration
@@ -21,11 +23,74 @@ public class FhirProperties {
     @NotEmpty
     private String clientSocketTimeoutInMs;
 
+    @NotNull
+    private SearchMode searchMode = SearchMode.COMBINED;
+
+    /**
+     * Number of matches per page requested from the FHIR server in the consent searches; the next pages are loaded
+     * while the consents of the previous ones are filtered.
+     */
+    @Min(1)
+    private int searchPageSize = 50;
+
+    @NotNull
+    @Valid
+    private PatientIdCache patientIdCache = new PatientIdCache();
+
+    @NotNull
+    @Valid
+    private ConnectionPool connectionPool = new ConnectionPool();
+
     private Ssn ssn;
     private Npi npi;
     private Pou pou;
     private Mrn mrn;
 
+    public enum SearchMode {
+        /**
+         * Searches the patient by MRN, then its active consents.
+         */
+        SEPARATE,
+        /**
+         * Searches the active consents of the patient by MRN with the patient and the actors included, in a single
+         * request.
+         */
+        COMBINED
+    }
+
+    @Data
+    public static class PatientIdCache {
+        private boolean enabled = true;
+        @Min(1)
+        private long maximumSize = 10000;
+        @Min(1)
+        private long expireAfterWriteInSeconds = 3600;
+    }
+
+    @Data
+    public static class ConnectionPool {
+        @Min(1)
+        private int maxTotal = 100;
+        @Min(1)
+        private int maxPerRoute = 50;
+        @Min(0)
+        private int connectTimeoutInMs = 10000;
+        /**
+         * Maximum time to wait for a connection from the pool.
+         */
+        @Min(0)
+        private int connectionRequestTimeoutInMs = 10000;
+        /**
+         * Keep-alive duration of the connections for which the server does not advertise one.
+         */
+        @Min(1)
+        private long defaultKeepAliveInMs = 30000;
+        @Min(1)
+        private long idleTimeoutInMs = 30000;
+        @Min(1)
+        private long idleEvictionIntervalInMs = 5000;
+    }
+
     @Data
     public static class Identifier {
         @NotNull
@@ -26,9 +26,16 @@ public FhirServiceConfig(FhirProperties fhirProperties) {
     public FhirContext fhirContext() {
         FhirContext fhirContext = FhirContext.forDstu3();
         fhirContext.getRestfulClientFactory().setSocketTimeout(Integer.parseInt(fhirProperties.getClientSocketTimeoutInMs()));
+        // The timeouts of the pooled client are set on its own request config
+        fhirContext.getRestfulClientFactory().setHttpClient(fhirClientConnectionPool().getHttpClient());
         return fhirContext;
     }
 
+    @Bean
+    public FhirClientConnectionPool fhirClientConnectionPool() {
+        return new FhirClientConnectionPool(fhirProperties);
+    }
+
     @Bean
     public IGenericClient fhirClient() {
         return fhirContext().newRestfulGenericClient(fhirProperties.getServerUrl());
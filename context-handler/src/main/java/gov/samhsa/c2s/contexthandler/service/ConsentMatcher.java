@@ -0,0 +1,152 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import gov.samhsa.c2s.common.consentgen.ConsentBuilder;
+import gov.samhsa.c2s.common.consentgen.ConsentGenException;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
+import gov.samhsa.c2s.contexthandler.service.exception.FhirConsentInvalidException;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.Consent;
+import org.hl7.fhir.dstu3.model.DomainResource;
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.r4.model.codesystems.V3ParticipationType;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Matches FHIR consents against the recipient NPI, the intermediary NPI and the purpose of use of one
+ * {@link XacmlRequestDto}.
+ * <p>
+ * The checks of a consent stop at the first one that fails. The NPIs extracted from the provider resources are
+ * memoized for the lifetime of the matcher, by resource instance and by server assigned resource id, because the same
+ * providers are the actors of many consents. A matcher is meant to be used by a single thread for a single request.
+ */
+@Slf4j
+public class ConsentMatcher {
+
+    private static final String RECIPIENT_ROLE_CODE = V3ParticipationType.IRCP.toCode();
+    private static final String INTERMEDIARY_ROLE_CODE = V3ParticipationType.INF.toCode();
+
+    private final ConsentBuilder consentBuilder;
+    private final String recipientNpi;
+    private final String intermediaryNpi;
+    private final String purposeOfUse;
+
+    private final Map<DomainResource, String> npiByResource = new IdentityHashMap<>();
+    private final Map<String, String> npiByResourceId = new HashMap<>();
+
+    public ConsentMatcher(ConsentBuilder consentBuilder, XacmlRequestDto xacmlRequest) {
+        this.consentBuilder = consentBuilder;
+        this.recipientNpi = xacmlRequest.getRecipientNpi();
+        this.intermediaryNpi = xacmlRequest.getIntermediaryNpi();
+        this.purposeOfUse = xacmlRequest.getPurposeOfUse().getPurposeFhir();
+    }
+
+    /**
+     * Returns whether the consent has a recipient (IRCP) actor with the recipient NPI, an intermediary (INF) actor
+     * with the intermediary NPI and the purpose of use of the request.
+     *
+     * @throws FhirConsentInvalidException if the consent has no actor or no recipient actor, or if the NPI cannot be
+     *                                     extracted from a provider resource that is checked
+     */
+    public boolean matches(Consent consent) {
+        if (!consent.hasActor()) {
+            log.error("One or more FHIR Consents in bundle passed to 'filterMatchingConsentsFromBundle' does not have any actor(s) specified");
+            throw new FhirConsentInvalidException("The FHIR consent does not have any actor(s) specified");
+        }
+        return matchesRecipient(consent) && matchesIntermediary(consent) && matchesPurposeOfUse(consent);
+    }
+
+    private boolean matchesRecipient(Consent consent) {
+        boolean hasRecipient = false;
+        for (Consent.ConsentActorComponent actor : consent.getActor()) {
+            if (!hasRole(actor, RECIPIENT_ROLE_CODE)) {
+                continue;
+            }
+            hasRecipient = true;
+            final DomainResource provider = (DomainResource) actor.getReference().getResource();
+            final String npi;
+            try {
+                npi = extractNpi(provider);
+            } catch (ConsentGenException e) {
+                log.error("ConsentGenException occurred while attempting to extract NPI from recipient(actor) FHIR provider resource in 'filterMatchingConsentsFromBundle' method", e);
+                throw new FhirConsentInvalidException("Error extracting NPI from recipient(actor) Provider resource", e);
+            }
+            if (npi.equalsIgnoreCase(recipientNpi)) {
+                return true;
+            }
+        }
+        if (!hasRecipient) {
+            throw new FhirConsentInvalidException("The FHIR consent does not have any TO provider(s) specified");
+        }
+        return false;
+    }
+
+    private boolean matchesIntermediary(Consent consent) {
+        for (Consent.ConsentActorComponent actor : consent.getActor()) {
+            if (!hasRole(actor, INTERMEDIARY_ROLE_CODE)) {
+                continue;
+            }
+            final DomainResource provider = (DomainResource) actor.getReference().getResource();
+            final String npi;
+            try {
+                npi = extractNpi(provider);
+            } catch (ConsentGenException e) {
+                log.error("ConsentGenException occurred while attempting to extract NPI from organization(From) FHIR provider resource in 'filterMatchingConsentsFromBundle' method", e);
+                throw new FhirConsentInvalidException("Error extracting NPI from organization(From) Provider resource", e);
+            }
+            if (npi.equalsIgnoreCase(intermediaryNpi)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesPurposeOfUse(Consent consent) {
+        for (Coding purpose : consent.getPurpose()) {
+            if (purpose.getCode().equals(purposeOfUse)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasRole(Consent.ConsentActorComponent actor, String roleCode) {
+        if (!actor.hasRole()) {
+            return false;
+        }
+        for (Coding coding : actor.getRole().getCoding()) {
+            if (coding.getCode().equalsIgnoreCase(roleCode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String extractNpi(DomainResource provider) throws ConsentGenException {
+        String npi = npiByResource.get(provider);
+        if (npi != null) {
+            return npi;
+        }
+        // Contained resources have local ids, which are only unique within their consent
+        final IdType id = provider == null ? null : provider.getIdElement();
+        final String resourceId = id == null || id.isLocal() || !id.hasIdPart() || !id.hasResourceType()
+                ? null
+                : id.toUnqualified().getValue();
+        if (resourceId != null) {
+            npi = npiByResourceId.get(resourceId);
+        }
+        if (npi == null) {
+            npi = consentBuilder.extractNpiFromFhirProviderResource(provider);
+        }
+        if (npi != null) {
+            npiByResource.put(provider, npi);
+            if (resourceId != null) {
+                npiByResourceId.put(resourceId, npi);
+            }
+        }
+        return npi;
+    }
+}
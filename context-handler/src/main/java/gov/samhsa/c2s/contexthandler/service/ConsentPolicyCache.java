@@ -0,0 +1,117 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import lombok.Value;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.hl7.fhir.dstu3.model.Consent;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, expiring cache of the XACML policies generated from FHIR consents.
+ * <p>
+ * A generated policy depends only on the consent, on the patient it is generated for and on the actors of the consent,
+ * so entries are keyed by the logical ids and version ids of all of them. Any update to one of these resources produces
+ * a new key instead of a stale hit. Actors contained in the consent are versioned with the consent. A consent is never
+ * cached when one of the resources has no version id, or when an actor is referenced but was not resolved. The cache statistics are published as actuator metrics under
+ * {@code cache.consent-policy}.
+ */
+@Component
+public class ConsentPolicyCache implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "cache.consent-policy.";
+
+    private final boolean enabled;
+    private final Cache<Key, Evaluatable> cache;
+
+    @Autowired
+    public ConsentPolicyCache(ContextHandlerProperties contextHandlerProperties) {
+        final ContextHandlerProperties.ConsentPolicyCache properties = contextHandlerProperties.getConsentPolicyCache();
+        this.enabled = properties.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getExpireAfterWriteInSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public Evaluatable get(Consent fhirConsent, Patient fhirPatient, Supplier<Evaluatable> policySupplier) {
+        final Optional<Key> key = Key.of(fhirConsent, fhirPatient);
+        if (!enabled || !key.isPresent()) {
+            return policySupplier.get();
+        }
+        return cache.get(key.get(), ignored -> policySupplier.get());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final CacheStats stats = cache.stats();
+        final List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "size", cache.estimatedSize()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit", stats.hitCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "miss", stats.missCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "eviction", stats.evictionCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit.ratio", stats.hitRate()));
+        return metrics;
+    }
+
+    @Value
+    public static class Key {
+        String consentId;
+        String consentVersionId;
+        String patientId;
+        String patientVersionId;
+        List<String> actorVersionedIds;
+
+        public static Optional<Key> of(Consent fhirConsent, Patient fhirPatient) {
+            final String consentId = fhirConsent.getIdElement().getIdPart();
+            final String consentVersionId = versionId(fhirConsent);
+            final String patientId = fhirPatient.getIdElement().getIdPart();
+            final String patientVersionId = versionId(fhirPatient);
+            if (!StringUtils.hasText(consentId) || !StringUtils.hasText(consentVersionId)
+                    || !StringUtils.hasText(patientId) || !StringUtils.hasText(patientVersionId)) {
+                return Optional.empty();
+            }
+            final List<String> actorVersionedIds = new ArrayList<>();
+            for (Consent.ConsentActorComponent actor : fhirConsent.getActor()) {
+                final Reference reference = actor.getReference();
+                if (reference.hasReference() && reference.getReference().startsWith("#")) {
+                    continue;
+                }
+                if (!(reference.getResource() instanceof Resource)) {
+                    return Optional.empty();
+                }
+                final Resource actorResource = (Resource) reference.getResource();
+                final String actorId = actorResource.getIdElement().toUnqualifiedVersionless().getValue();
+                final String actorVersionId = versionId(actorResource);
+                if (!StringUtils.hasText(actorId) || !StringUtils.hasText(actorVersionId)) {
+                    return Optional.empty();
+                }
+                actorVersionedIds.add(actorId + "/_history/" + actorVersionId);
+            }
+            return Optional.of(new Key(consentId, consentVersionId, patientId, patientVersionId, actorVersionedIds));
+        }
+
+        private static String versionId(Resource resource) {
+            return resource.hasMeta() && resource.getMeta().hasVersionId()
+                    ? resource.getMeta().getVersionId()
+                    : resource.getIdElement().getVersionIdPart();
+        }
+    }
+}
@@ -4,8 +4,39 @@
 import gov.samhsa.c2s.contexthandler.service.dto.XacmlResponseDto;
 import gov.samhsa.c2s.contexthandler.service.exception.C2SAuditException;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface ContextHandlerService {
 
     XacmlResponseDto enforcePolicy(XacmlRequestDto xacmlRequest) throws C2SAuditException;
 
+    /**
+     * Enforces the policies for the given request without blocking the calling thread. The policies are retrieved on
+     * the policy retrieval executor, which is sized for blocking I/O, and the request is evaluated on the policy
+     * evaluation executor, which is sized for the available processors.
+     *
+     * @param xacmlRequest the xacml request
+     * @return the response; DENY when no policy is found, completed exceptionally on any other failure
+     */
+    CompletableFuture<XacmlResponseDto> enforcePolicyAsync(XacmlRequestDto xacmlRequest);
+
+    /**
+     * Enforces the policies for each of the given requests. The policies are retrieved once for all requests that
+     * select the same policies, and the requests are evaluated in parallel.
+     *
+     * @param xacmlRequests the xacml requests
+     * @return the responses, in the order of the requests; a request that fails is answered with a DENY response
+     */
+    List<XacmlResponseDto> enforcePolicies(List<XacmlRequestDto> xacmlRequests);
+
+    /**
+     * Enforces the policies for each of the given requests like {@link #enforcePolicies(List)}, without blocking the
+     * calling thread.
+     *
+     * @param xacmlRequests the xacml requests
+     * @return the responses, in the order of the requests, completed once every request is answered
+     */
+    CompletableFuture<List<XacmlResponseDto>> enforcePoliciesAsync(List<XacmlRequestDto> xacmlRequests);
+
 }
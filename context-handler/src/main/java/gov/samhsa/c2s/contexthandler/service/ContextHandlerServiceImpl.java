@@ -2,16 +2,32 @@
 
 import gov.samhsa.c2s.common.log.Logger;
 import gov.samhsa.c2s.common.log.LoggerFactory;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.service.dto.PatientIdDto;
+import gov.samhsa.c2s.contexthandler.service.dto.SubjectPurposeOfUse;
 import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
 import gov.samhsa.c2s.contexthandler.service.dto.XacmlResponseDto;
+import gov.samhsa.c2s.contexthandler.service.exception.BatchTooLargeException;
 import gov.samhsa.c2s.contexthandler.service.exception.C2SAuditException;
 import gov.samhsa.c2s.contexthandler.service.exception.NoPolicyFoundException;
+import gov.samhsa.c2s.contexthandler.service.exception.PolicyEnforcementUnavailableException;
+import lombok.Value;
+import org.herasaf.xacml.core.policy.Evaluatable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 public class ContextHandlerServiceImpl implements ContextHandlerService {
@@ -24,6 +40,17 @@ public class ContextHandlerServiceImpl implements ContextHandlerService {
     @Autowired
     private PolicyDecisionPointService policyDesicionPointService;
 
+    @Autowired
+    private ContextHandlerProperties contextHandlerProperties;
+
+    @Autowired
+    @Qualifier("policyRetrievalExecutor")
+    private Executor policyRetrievalExecutor;
+
+    @Autowired
+    @Qualifier("policyEvaluationExecutor")
+    private Executor policyEvaluationExecutor;
+
     @Override
     public XacmlResponseDto enforcePolicy(XacmlRequestDto xacmlRequest) throws C2SAuditException {
         try {
@@ -36,10 +63,130 @@ public XacmlResponseDto enforcePolicy(XacmlRequestDto xacmlRequest) throws C2SAu
             logger.debug(() -> "PDP Obligations: " + xacmlResponse.getPdpObligations().toString());
             return xacmlResponse;
         } catch (final NoPolicyFoundException e) {
-            List<String> pdpObligations = new ArrayList<>();
-            final XacmlResponseDto xacmlResponse = XacmlResponseDto.builder().pdpDecision("DENY").pdpObligations(pdpObligations).build();
-        //    xacmlResponse.setPdpDecision(e.getClass().getName());
-            return xacmlResponse;
+            return denyResponse();
+        }
+    }
+
+    @Override
+    public CompletableFuture<XacmlResponseDto> enforcePolicyAsync(XacmlRequestDto xacmlRequest) {
+        logger.debug("policyDesicionPoint.evaluateRequest(xacmlRequest) is invoked asynchronously");
+
+        xacmlRequest.setMessageId(UUID.randomUUID().toString());
+        return supplyAsync(() -> policyDesicionPointService.getPolicies(xacmlRequest), policyRetrievalExecutor)
+                .thenApplyAsync(policies -> policyDesicionPointService.evaluateRequest(xacmlRequest, policies),
+                        policyEvaluationExecutor)
+                .handle((xacmlResponse, throwable) -> {
+                    if (throwable == null) {
+                        logger.debug(() -> "PDP Decision: " + xacmlResponse.getPdpDecision());
+                        logger.debug(() -> "PDP Obligations: " + xacmlResponse.getPdpObligations().toString());
+                        return xacmlResponse;
+                    }
+                    final Throwable cause = unwrap(throwable);
+                    if (cause instanceof NoPolicyFoundException) {
+                        return denyResponse();
+                    }
+                    if (cause instanceof RejectedExecutionException) {
+                        throw new CompletionException(unavailable(xacmlRequest, cause));
+                    }
+                    throw throwable instanceof CompletionException
+                            ? (CompletionException) throwable
+                            : new CompletionException(throwable);
+                });
+    }
+
+    @Override
+    public List<XacmlResponseDto> enforcePolicies(List<XacmlRequestDto> xacmlRequests) {
+        return enforcePoliciesAsync(xacmlRequests).join();
+    }
+
+    @Override
+    public CompletableFuture<List<XacmlResponseDto>> enforcePoliciesAsync(List<XacmlRequestDto> xacmlRequests) {
+        final int maxRequests = contextHandlerProperties.getBatch().getMaxRequests();
+        if (xacmlRequests.size() > maxRequests) {
+            throw new BatchTooLargeException("A batch can contain at most " + maxRequests + " requests, but "
+                    + xacmlRequests.size() + " were given");
+        }
+        logger.debug(() -> "policyDesicionPoint.evaluateRequest is invoked for a batch of " + xacmlRequests.size() + " requests");
+
+        // Requests that select the same policies share one retrieval
+        final Map<PolicyLookupKey, CompletableFuture<List<Evaluatable>>> policiesByLookupKey = new HashMap<>();
+        final List<CompletableFuture<XacmlResponseDto>> xacmlResponses = new ArrayList<>(xacmlRequests.size());
+        for (final XacmlRequestDto xacmlRequest : xacmlRequests) {
+            xacmlRequest.setMessageId(UUID.randomUUID().toString());
+            final CompletableFuture<List<Evaluatable>> policies = policiesByLookupKey.computeIfAbsent(
+                    PolicyLookupKey.of(xacmlRequest),
+                    lookupKey -> supplyAsync(
+                            () -> policyDesicionPointService.getPolicies(xacmlRequest), policyRetrievalExecutor));
+            xacmlResponses.add(policies
+                    .thenApplyAsync(retrievedPolicies -> policyDesicionPointService
+                            .evaluateRequest(xacmlRequest, retrievedPolicies), policyEvaluationExecutor)
+                    .exceptionally(e -> handleBatchItemFailure(xacmlRequest, e)));
+        }
+        // Every response is already completed when allOf completes, so join does not block
+        return CompletableFuture.allOf(xacmlResponses.toArray(new CompletableFuture<?>[xacmlResponses.size()]))
+                .thenApply(ignored -> xacmlResponses.stream()
+                        .map(CompletableFuture::join)
+                        .collect(Collectors.toList()));
+    }
+
+    private XacmlResponseDto handleBatchItemFailure(XacmlRequestDto xacmlRequest, Throwable throwable) {
+        final Throwable cause = unwrap(throwable);
+        if (cause instanceof RejectedExecutionException) {
+            // A saturated executor fails the whole batch rather than denying some of its requests
+            throw new CompletionException(unavailable(xacmlRequest, cause));
+        }
+        if (cause instanceof NoPolicyFoundException) {
+            logger.info(() -> "No policy found for message " + xacmlRequest.getMessageId() + ": " + cause.getMessage());
+        } else {
+            logger.error("Policy enforcement failed for message " + xacmlRequest.getMessageId()
+                    + ", responding with DENY", cause);
+        }
+        return denyResponse();
+    }
+
+    /**
+     * Like {@link CompletableFuture#supplyAsync(Supplier, Executor)}, but completes the future exceptionally instead of
+     * throwing when the executor rejects the task.
+     */
+    private static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor);
+        } catch (RejectedExecutionException e) {
+            final CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    private static PolicyEnforcementUnavailableException unavailable(XacmlRequestDto xacmlRequest, Throwable cause) {
+        return new PolicyEnforcementUnavailableException("Policy enforcement is saturated, rejected message "
+                + xacmlRequest.getMessageId(), cause);
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+    }
+
+    private XacmlResponseDto denyResponse() {
+        List<String> pdpObligations = new ArrayList<>();
+        return XacmlResponseDto.builder().pdpDecision("DENY").pdpObligations(pdpObligations).build();
+    }
+
+    /**
+     * The request attributes the policy providers select policies by.
+     */
+    @Value
+    private static class PolicyLookupKey {
+        PatientIdDto patientId;
+        String recipientNpi;
+        String intermediaryNpi;
+        SubjectPurposeOfUse purposeOfUse;
+
+        static PolicyLookupKey of(XacmlRequestDto xacmlRequest) {
+            return new PolicyLookupKey(xacmlRequest.getPatientId(), xacmlRequest.getRecipientNpi(),
+                    xacmlRequest.getIntermediaryNpi(), xacmlRequest.getPurposeOfUse());
         }
     }
 
@@ -0,0 +1,76 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import gov.samhsa.c2s.contexthandler.config.FhirProperties;
+import lombok.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, expiring cache of the FHIR Patient resource ids resolved from patient MRNs, so that the patient search
+ * is only made on a miss. The cache statistics are published as actuator metrics under {@code cache.fhir-patient-id}.
+ */
+@Component
+public class FhirPatientIdCache implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "cache.fhir-patient-id.";
+
+    private final boolean enabled;
+    private final Cache<Mrn, String> cache;
+
+    @Autowired
+    public FhirPatientIdCache(FhirProperties fhirProperties) {
+        final FhirProperties.PatientIdCache properties = fhirProperties.getPatientIdCache();
+        this.enabled = properties.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getExpireAfterWriteInSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public Optional<String> get(String mrnSystem, String mrn) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(cache.getIfPresent(new Mrn(mrnSystem, mrn)));
+    }
+
+    public void put(String mrnSystem, String mrn, String patientId) {
+        if (enabled) {
+            cache.put(new Mrn(mrnSystem, mrn), patientId);
+        }
+    }
+
+    public void invalidate(String mrnSystem, String mrn) {
+        cache.invalidate(new Mrn(mrnSystem, mrn));
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final CacheStats stats = cache.stats();
+        final List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "size", cache.estimatedSize()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit", stats.hitCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "miss", stats.missCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "eviction", stats.evictionCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit.ratio", stats.hitRate()));
+        return metrics;
+    }
+
+    @Value
+    private static class Mrn {
+        String system;
+        String value;
+    }
+}
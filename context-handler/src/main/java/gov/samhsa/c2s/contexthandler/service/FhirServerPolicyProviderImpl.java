@@ -4,28 +4,35 @@
 import ca.uhn.fhir.rest.gclient.DateClientParam;
 import ca.uhn.fhir.rest.gclient.ReferenceClientParam;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import gov.samhsa.c2s.common.consentgen.ConsentBuilder;
 import gov.samhsa.c2s.common.consentgen.ConsentDto;
 import gov.samhsa.c2s.common.consentgen.ConsentGenException;
+import gov.samhsa.c2s.contexthandler.config.FhirProperties;
 import gov.samhsa.c2s.contexthandler.service.dto.ConsentListAndPatientDto;
-import gov.samhsa.c2s.contexthandler.service.dto.PolicyContainerDto;
 import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
 import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
-import gov.samhsa.c2s.contexthandler.service.exception.FhirConsentInvalidException;
 import gov.samhsa.c2s.contexthandler.service.exception.MultiplePatientsFound;
 import gov.samhsa.c2s.contexthandler.service.exception.NoConsentFoundException;
 import gov.samhsa.c2s.contexthandler.service.exception.NoPolicyFoundException;
 import gov.samhsa.c2s.contexthandler.service.exception.PatientNotFound;
 import gov.samhsa.c2s.contexthandler.service.exception.PolicyProviderException;
+import gov.samhsa.c2s.contexthandler.service.util.FhirBundlePageIterator;
 import gov.samhsa.c2s.contexthandler.service.util.PolicyCombiningAlgIds;
 import lombok.extern.slf4j.Slf4j;
+import org.herasaf.xacml.core.SyntaxException;
 import org.herasaf.xacml.core.policy.Evaluatable;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.Consent;
-import org.hl7.fhir.dstu3.model.DomainResource;
+import org.hl7.fhir.dstu3.model.IdType;
 import org.hl7.fhir.dstu3.model.Patient;
-import org.hl7.fhir.r4.model.codesystems.V3ParticipationType;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
@@ -35,24 +42,56 @@
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 @ConditionalOnProperty(name = "c2s.context-handler.policy-provider", havingValue = "FhirServerPolicyProviderImpl")
 public class FhirServerPolicyProviderImpl implements PolicyProvider {
+    private static final String FHIR_CONSENT_TO_CONSENT_DTO_METRIC = "timer.policy-provider.fhir.consent-dto-conversion";
+    private static final String CONSENT_TO_XACML_METRIC = "timer.policy-provider.fhir.xacml-conversion";
+
     private final ConsentBuilder consentBuilder;
 
     @Autowired
     private IGenericClient fhirClient;
 
+    @Autowired
+    private FhirProperties fhirProperties;
+
+    @Autowired
+    private FhirPatientIdCache fhirPatientIdCache;
+
     private final XacmlPolicySetService xacmlPolicySetService;
 
+    private final Executor policyEvaluationExecutor;
+
+    private final MetricRegistry metricRegistry;
+
+    private final ConsentPolicyCache consentPolicyCache;
+
+    private final PolicyValidator policyValidator;
+
     @Autowired
-    public FhirServerPolicyProviderImpl(ConsentBuilder consentBuilder, XacmlPolicySetService xacmlPolicySetService) {
+    public FhirServerPolicyProviderImpl(ConsentBuilder consentBuilder, XacmlPolicySetService xacmlPolicySetService,
+                                        @Qualifier("policyEvaluationExecutor") Executor policyEvaluationExecutor,
+                                        MetricRegistry metricRegistry, ConsentPolicyCache consentPolicyCache,
+                                        PolicyValidator policyValidator) {
         this.consentBuilder = consentBuilder;
         this.xacmlPolicySetService = xacmlPolicySetService;
+        this.policyEvaluationExecutor = policyEvaluationExecutor;
+        this.metricRegistry = metricRegistry;
+        this.consentPolicyCache = consentPolicyCache;
+        this.policyValidator = policyValidator;
     }
 
     @Override
@@ -62,63 +101,158 @@ public List<Evaluatable> getPolicies(XacmlRequestDto xacmlRequest) throws NoPoli
 
         List<Consent> fhirConsentList = consentListAndPatientDto.getMatchingConsents();
 
-        List<ConsentDto> consentDtoList = convertFhirConsentListToConsentDtoList(fhirConsentList, fhirPatient);
-        List<PolicyDto> policyDtoList = convertConsentDtoListToXacmlPolicyDtoList(consentDtoList);
-
-        PolicyContainerDto policyContainerDto = PolicyContainerDto.builder().policies(policyDtoList).build();
+        List<Evaluatable> policies = convertFhirConsentListToXacmlPolicies(fhirConsentList, fhirPatient);
 
         Evaluatable policySet = xacmlPolicySetService.getPoliciesCombinedAsPolicySet(
-                policyContainerDto,
-                UUID.randomUUID().toString(),
-                PolicyCombiningAlgIds.DENY_OVERRIDES.getUrn()
+                policies,
+                null,
+                PolicyCombiningAlgIds.DENY_OVERRIDES
         );
 
         return Arrays.asList(policySet);
     }
 
-    private List<PolicyDto> convertConsentDtoListToXacmlPolicyDtoList(List<ConsentDto> consentDtoList) {
-        List<PolicyDto> policyDtoList = new ArrayList<>();
-
+    /**
+     * Converts the given consents to XACML policies in parallel on the policy evaluation executor, and returns the
+     * policies in the order of the consents. A consent that was converted before for the same version of the consent
+     * and the patient is served from the {@link ConsentPolicyCache}.
+     */
+    List<Evaluatable> convertFhirConsentListToXacmlPolicies(List<Consent> fhirConsentList, Patient fhirPatient) {
+        final List<CompletableFuture<Evaluatable>> conversions = fhirConsentList.stream()
+                .map(fhirConsent -> convertAsync(() -> consentPolicyCache.get(fhirConsent, fhirPatient,
+                        () -> convertFhirConsentToXacmlPolicy(fhirConsent, fhirPatient))))
+                .collect(Collectors.toList());
+
+        final List<Evaluatable> policies = new ArrayList<>(conversions.size());
         try {
-            for (ConsentDto consentDto : consentDtoList) {
-                String consentXacmlString = consentBuilder.buildConsent2Xacml(consentDto);
-                PolicyDto policyDto = new PolicyDto();
-                policyDto.setId(consentDto.getConsentReferenceid());
-                policyDto.setPolicy(consentXacmlString.getBytes(StandardCharsets.UTF_8));
-
-                policyDtoList.add(policyDto);
+            for (CompletableFuture<Evaluatable> conversion : conversions) {
+                policies.add(conversion.join());
             }
-            log.info("Conversion of ConsentDto list to XACML PolicyDto list complete.");
-        }
-        catch (ConsentGenException e) {
-            log.error("ConsentGenException occurred while trying to convert ConsentDto object(s) to XACML PolicyDto object(s)", e);
-            throw new PolicyProviderException("Unable to process FHIR consent(s)", e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ConsentGenException) {
+                log.error("ConsentGenException occurred while trying to convert FHIR Consent object(s) to XACML policies", e.getCause());
+                throw new PolicyProviderException("Unable to process FHIR consent(s)", e.getCause());
+            }
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
         }
+        log.info("Conversion of FHIR Consent list to XACML policies complete.");
+        return policies;
+    }
 
-        return policyDtoList;
+    /**
+     * Runs the given conversion on the policy evaluation executor. When the executor is saturated, the conversion runs
+     * on the calling thread instead, so that a patient with more consents than free queue slots does not fail the
+     * request and no submitted conversion is left without a caller waiting for it.
+     */
+    private CompletableFuture<Evaluatable> convertAsync(Supplier<Evaluatable> conversion) {
+        try {
+            return CompletableFuture.supplyAsync(conversion, policyEvaluationExecutor);
+        } catch (RejectedExecutionException e) {
+            final CompletableFuture<Evaluatable> callerRunConversion = new CompletableFuture<>();
+            try {
+                callerRunConversion.complete(conversion.get());
+            } catch (RuntimeException conversionException) {
+                callerRunConversion.completeExceptionally(conversionException);
+            }
+            return callerRunConversion;
+        }
     }
 
-    private List<ConsentDto> convertFhirConsentListToConsentDtoList(List<Consent> fhirConsentList, Patient fhirPatient) {
-        List<ConsentDto> consentDtoList = new ArrayList<>();
+    private Evaluatable convertFhirConsentToXacmlPolicy(Consent fhirConsent, Patient fhirPatient) {
+        final ConsentDto consentDto = timed(FHIR_CONSENT_TO_CONSENT_DTO_METRIC,
+                () -> consentBuilder.buildFhirConsent2ConsentDto(fhirConsent, fhirPatient));
+        final String consentXacmlString = timed(CONSENT_TO_XACML_METRIC,
+                () -> consentBuilder.buildConsent2Xacml(consentDto));
 
+        PolicyDto policyDto = new PolicyDto();
+        policyDto.setId(consentDto.getConsentReferenceid());
+        policyDto.setPolicy(consentXacmlString.getBytes(StandardCharsets.UTF_8));
         try {
-            for (Consent fhirConsent : fhirConsentList) {
-                consentDtoList.add(consentBuilder.buildFhirConsent2ConsentDto(fhirConsent, fhirPatient));
-            }
-            log.info("Conversion of FHIR Consent list to ConsentDto list complete.");
+            return policyValidator.validateAndUnmarshal(policyDto);
+        } catch (SyntaxException e) {
+            log.error(e.getMessage(), e);
+            throw new PolicyProviderException(e.getMessage(), e);
         }
-        catch (ConsentGenException e) {
-            log.error("ConsentGenException occurred while trying to convert FHIR Consent object(s) to ConsentDto object(s)", e);
-            throw new PolicyProviderException("Unable to process FHIR consent(s)", e);
+    }
+
+    /**
+     * Runs the given conversion, recording its duration on the given timer of the metric registry. A
+     * {@link ConsentGenException} is rethrown wrapped in a {@link CompletionException}.
+     */
+    private <T> T timed(String metricName, ConsentConversion<T> conversion) {
+        final Timer.Context timerContext = metricRegistry.timer(metricName).time();
+        try {
+            return conversion.convert();
+        } catch (ConsentGenException e) {
+            throw new CompletionException(e);
+        } finally {
+            timerContext.stop();
         }
+    }
 
-        return consentDtoList;
+    @FunctionalInterface
+    private interface ConsentConversion<T> {
+        T convert() throws ConsentGenException;
     }
 
-    private ConsentListAndPatientDto searchForFhirPatientAndFhirConsent(XacmlRequestDto xacmlRequest) {
+    ConsentListAndPatientDto searchForFhirPatientAndFhirConsent(XacmlRequestDto xacmlRequest) {
         String patientMrnSystem = xacmlRequest.getPatientId().getRoot();
         String patientMrn = xacmlRequest.getPatientId().getExtension();
+        ConsentMatcher consentMatcher = new ConsentMatcher(consentBuilder, xacmlRequest);
+
+        Optional<String> cachedPatientResourceId = fhirPatientIdCache.get(patientMrnSystem, patientMrn);
+        if (cachedPatientResourceId.isPresent()) {
+            Optional<ConsentListAndPatientDto> consentListAndPatientDto =
+                    searchForFhirConsentWithFhirPatient(cachedPatientResourceId.get(), xacmlRequest, consentMatcher);
+            if (consentListAndPatientDto.isPresent()) {
+                return consentListAndPatientDto.get();
+            }
+            log.debug("No patient found with the cached FHIR patient id for the given MRN: " + patientMrn);
+            fhirPatientIdCache.invalidate(patientMrnSystem, patientMrn);
+        }
+
+        if (fhirProperties.getSearchMode() == FhirProperties.SearchMode.COMBINED) {
+            return searchForFhirConsentsWithFhirPatient(xacmlRequest, consentMatcher);
+        }
+
+        Patient patientObj = searchForFhirPatient(patientMrnSystem, patientMrn);
 
+        String patientResourceId = patientObj.getIdElement().getIdPart();
+        String dateToday = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+
+        Bundle consentSearchResponse = fhirClient.search()
+                .forResource(Consent.class)
+                .where(new ReferenceClientParam("patient")
+                        .hasId(patientResourceId))
+                .where(new TokenClientParam("status").exactly().code("active"))
+                .where(new DateClientParam("period").afterOrEquals().second(dateToday))
+                .where(new DateClientParam("period").beforeOrEquals().second(dateToday))
+                .count(fhirProperties.getSearchPageSize())
+                .returnBundle(Bundle.class)
+                .execute();
+
+        boolean consentFound = false;
+        List<Consent> matchingConsents = new ArrayList<>();
+        for (Bundle page : pages(consentSearchResponse)) {
+            List<Consent> retrievedConsents = resourcesOfType(page, Consent.class);
+            consentFound |= !retrievedConsents.isEmpty();
+            matchingConsents.addAll(filterMatchingConsentsFromBundle(retrievedConsents, consentMatcher));
+        }
+
+        if (!consentFound) {
+            log.debug("No active consents matching query parameters were found in FHIR server during search in 'searchForFhirPatientAndFhirConsent' method");
+            throw new NoConsentFoundException("No active consent found for date:" + dateToday + " and for the given MRN:" + patientMrn);
+        }
+
+        log.debug("FHIR Consent(s) bundle retrieved from FHIR server successfully");
+
+        return new ConsentListAndPatientDto(matchingConsents, patientObj);
+    }
+
+    /**
+     * Searches the patient by MRN and caches its resource id.
+     */
+    private Patient searchForFhirPatient(String patientMrnSystem, String patientMrn) {
         Bundle patientSearchResponse = fhirClient.search()
                 .forResource(Patient.class)
                 .where(new TokenClientParam("identifier")
@@ -139,125 +273,214 @@ private ConsentListAndPatientDto searchForFhirPatientAndFhirConsent(XacmlRequest
         }
 
         Patient patientObj = (Patient) patientSearchResponse.getEntry().get(0).getResource();
+        fhirPatientIdCache.put(patientMrnSystem, patientMrn, patientObj.getIdElement().getIdPart());
+        return patientObj;
+    }
 
-        String patientResourceId = patientObj.getIdElement().getIdPart();
+    /**
+     * Searches the active consents of the patient with the MRN, chained on the patient identifier, with the patient
+     * and the actors included, in a single request. The server filters the consents by status and period and pages
+     * them by the search page size. The patient is only searched on its own when no consent is found, to tell a
+     * missing patient from a patient without consents, or when the server does not include it.
+     */
+    private ConsentListAndPatientDto searchForFhirConsentsWithFhirPatient(XacmlRequestDto xacmlRequest,
+                                                                         ConsentMatcher consentMatcher) {
+        String patientMrnSystem = xacmlRequest.getPatientId().getRoot();
+        String patientMrn = xacmlRequest.getPatientId().getExtension();
         String dateToday = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
 
         Bundle consentSearchResponse = fhirClient.search()
                 .forResource(Consent.class)
                 .where(new ReferenceClientParam("patient")
-                        .hasId(patientResourceId))
+                        .hasChainedProperty(new TokenClientParam("identifier")
+                                .exactly()
+                                .systemAndCode(patientMrnSystem, patientMrn)))
                 .where(new TokenClientParam("status").exactly().code("active"))
                 .where(new DateClientParam("period").afterOrEquals().second(dateToday))
                 .where(new DateClientParam("period").beforeOrEquals().second(dateToday))
+                .include(Consent.INCLUDE_PATIENT)
+                .include(Consent.INCLUDE_ACTOR)
+                .count(fhirProperties.getSearchPageSize())
                 .returnBundle(Bundle.class)
                 .execute();
 
-        if (consentSearchResponse == null || consentSearchResponse.getEntry().size() < 1) {
-            log.debug("No active consents matching query parameters were found in FHIR server during search in 'searchForFhirPatientAndFhirConsent' method");
+        Patient patientObj = null;
+        boolean consentFound = false;
+        List<Consent> matchingConsents = new ArrayList<>();
+        for (Bundle page : pages(consentSearchResponse)) {
+            List<Consent> retrievedConsents = resourcesOfType(page, Consent.class);
+            // Consents of different patients mean that the MRN is not unique
+            for (Patient patient : includedPatients(retrievedConsents, page)) {
+                if (patientObj == null) {
+                    patientObj = patient;
+                } else if (!patientObj.getIdElement().getIdPart().equals(patient.getIdElement().getIdPart())) {
+                    log.warn("Multiple patients were found in FHIR server for the same given MRN: " + patientMrn);
+                    log.debug("       URL of FHIR Server: " + fhirClient.getServerBase());
+                    throw new MultiplePatientsFound("Multiple patients found in FHIR server with the given MRN");
+                }
+            }
+
+            consentFound |= !retrievedConsents.isEmpty();
+            resolveActorReferences(retrievedConsents, page);
+            matchingConsents.addAll(filterMatchingConsentsFromBundle(retrievedConsents, consentMatcher));
+        }
+
+        if (!consentFound) {
+            // Throws if the patient does not exist or is not unique
+            searchForFhirPatient(patientMrnSystem, patientMrn);
+            log.debug("No active consents matching query parameters were found in FHIR server during search in 'searchForFhirConsentsWithFhirPatient' method");
             throw new NoConsentFoundException("No active consent found for date:" + dateToday + " and for the given MRN:" + patientMrn);
         }
 
-        log.debug("FHIR Consent(s) bundle retrieved from FHIR server successfully");
+        if (patientObj == null) {
+            patientObj = searchForFhirPatient(patientMrnSystem, patientMrn);
+        } else {
+            fhirPatientIdCache.put(patientMrnSystem, patientMrn, patientObj.getIdElement().getIdPart());
+        }
 
-        List<Consent> matchingConsents = filterMatchingConsentsFromBundle(consentSearchResponse, xacmlRequest);
+        log.debug("FHIR Patient and Consent(s) bundle retrieved from FHIR server successfully");
 
         return new ConsentListAndPatientDto(matchingConsents, patientObj);
     }
 
-    private List<Consent> filterMatchingConsentsFromBundle(Bundle consentSearchResponse, XacmlRequestDto xacmlRequest) {
-        //Loop through the consents to filter out those that match the xacmlRequest
-
-        List<Bundle.BundleEntryComponent> retrievedConsents = consentSearchResponse.getEntry();
-        List<Consent> matchingConsents = new ArrayList<>();
-
-        for (Bundle.BundleEntryComponent tempBundleEntryComponent : retrievedConsents) {
-
-            boolean fromProviderMatched = false;
-            boolean toProviderMatched = false;
-            boolean purposeOfUseMatched = false;
-
-            Consent tempConsent = (Consent) tempBundleEntryComponent.getResource();
-
-            //Check "To" Provider
-            List<DomainResource> fhirToProviderResourceList = new ArrayList<>();
+    /**
+     * Searches the active consents of a patient whose resource id is known from the {@link FhirPatientIdCache}, with
+     * the patient and the actors included. When the server does not include the patient, it is read by its id. Throws
+     * {@link NoConsentFoundException} when the patient exists without active consents. Returns empty only when the
+     * patient no longer exists, so that the stale id is dropped and the patient is searched by MRN again.
+     */
+    private Optional<ConsentListAndPatientDto> searchForFhirConsentWithFhirPatient(String patientResourceId,
+                                                                                 XacmlRequestDto xacmlRequest,
+                                                                                 ConsentMatcher consentMatcher) {
+        String dateToday = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
 
-            if (tempConsent.hasActor()) {
-                List<Consent.ConsentActorComponent> fhirToProviderActorList = tempConsent.getActor().stream()
-                        .filter(Consent.ConsentActorComponent::hasRole)
-                        .filter(actor -> actor.getRole().getCoding().stream()
-                                .anyMatch(coding -> coding.getCode().equalsIgnoreCase(V3ParticipationType.IRCP.toCode())))
-                        .collect(Collectors.toList());
+        Bundle consentSearchResponse = fhirClient.search()
+                .forResource(Consent.class)
+                .where(new ReferenceClientParam("patient")
+                        .hasId(patientResourceId))
+                .where(new TokenClientParam("status").exactly().code("active"))
+                .where(new DateClientParam("period").afterOrEquals().second(dateToday))
+                .where(new DateClientParam("period").beforeOrEquals().second(dateToday))
+                .include(Consent.INCLUDE_PATIENT)
+                .include(Consent.INCLUDE_ACTOR)
+                .count(fhirProperties.getSearchPageSize())
+                .returnBundle(Bundle.class)
+                .execute();
 
-                fhirToProviderActorList.forEach(fhirToProviderReference ->
-                        fhirToProviderResourceList.add((DomainResource) fhirToProviderReference.getReference().getResource()));
-            } else {
-                log.error("One or more FHIR Consents in bundle passed to 'filterMatchingConsentsFromBundle' does not have any actor(s) specified");
-                throw new FhirConsentInvalidException("The FHIR consent does not have any actor(s) specified");
-            }
-            if (fhirToProviderResourceList == null || fhirToProviderResourceList.size() < 1) {
-                throw new FhirConsentInvalidException("The FHIR consent does not have any TO provider(s) specified");
+        Optional<Patient> patientObj = Optional.empty();
+        boolean consentFound = false;
+        List<Consent> matchingConsents = new ArrayList<>();
+        for (Bundle page : pages(consentSearchResponse)) {
+            if (!patientObj.isPresent()) {
+                patientObj = resourcesOfType(page, Patient.class).stream()
+                        .filter(patient -> patientResourceId.equals(patient.getIdElement().getIdPart()))
+                        .findFirst();
             }
 
-            for (DomainResource fhirToProviderResource : fhirToProviderResourceList) {
-
-                String fhirFromProviderNpi;
-                try {
-                    fhirFromProviderNpi = consentBuilder.extractNpiFromFhirProviderResource(fhirToProviderResource);
-                }
-                catch (ConsentGenException e) {
-                    log.error("ConsentGenException occurred while attempting to extract NPI from recipient(actor) FHIR provider resource in 'filterMatchingConsentsFromBundle' method", e);
-                    throw new FhirConsentInvalidException("Error extracting NPI from recipient(actor) Provider resource", e);
-                }
-
-                if (fhirFromProviderNpi.equalsIgnoreCase(xacmlRequest.getRecipientNpi())) {
-                    toProviderMatched = true;
-                    break;
-                }
+            List<Consent> retrievedConsents = resourcesOfType(page, Consent.class);
+            consentFound |= !retrievedConsents.isEmpty();
+            resolveActorReferences(retrievedConsents, page);
+            matchingConsents.addAll(filterMatchingConsentsFromBundle(retrievedConsents, consentMatcher));
+        }
 
+        if (!patientObj.isPresent()) {
+            patientObj = readFhirPatient(patientResourceId);
+            if (!patientObj.isPresent()) {
+                return Optional.empty();
             }
+        }
 
-            //Check "From" Provider
-            List<DomainResource> fhirFromProviderResourceList = new ArrayList<>();
+        if (!consentFound) {
+            log.debug("No active consents matching query parameters were found in FHIR server during search in 'searchForFhirConsentWithFhirPatient' method");
+            throw new NoConsentFoundException("No active consent found for date:" + dateToday + " and for the given MRN:"
+                    + xacmlRequest.getPatientId().getExtension());
+        }
 
-            List<Consent.ConsentActorComponent> fhirFromProviderActorList = tempConsent.getActor().stream()
-                    .filter(Consent.ConsentActorComponent::hasRole)
-                    .filter(actor -> actor.getRole().getCoding().stream()
-                            .anyMatch(coding -> coding.getCode().equalsIgnoreCase(V3ParticipationType.INF.toCode())))
-                    .collect(Collectors.toList());
+        log.debug("FHIR Consent(s) bundle retrieved from FHIR server successfully");
 
-            fhirFromProviderActorList.forEach(fhirFromProvider ->
-                    fhirFromProviderResourceList.add((DomainResource) fhirFromProvider.getReference().getResource()));
+        return Optional.of(new ConsentListAndPatientDto(matchingConsents, patientObj.get()));
+    }
 
-            for (DomainResource fhirFromProviderResource : fhirFromProviderResourceList) {
-                String fhirFromProviderNpi;
-                try {
-                    fhirFromProviderNpi = consentBuilder.extractNpiFromFhirProviderResource(fhirFromProviderResource);
-                }
-                catch (ConsentGenException e) {
-                    log.error("ConsentGenException occurred while attempting to extract NPI from organization(From) FHIR provider resource in 'filterMatchingConsentsFromBundle' method", e);
-                    throw new FhirConsentInvalidException("Error extracting NPI from organization(From) Provider resource", e);
-                }
+    /**
+     * Reads the patient with the given resource id, or returns empty if it does not exist anymore.
+     */
+    private Optional<Patient> readFhirPatient(String patientResourceId) {
+        try {
+            return Optional.of(fhirClient.read()
+                    .resource(Patient.class)
+                    .withId(patientResourceId)
+                    .execute());
+        } catch (ResourceNotFoundException | ResourceGoneException e) {
+            log.debug("FHIR patient not found with the cached id: " + patientResourceId);
+            return Optional.empty();
+        }
+    }
 
-                if (fhirFromProviderNpi.equalsIgnoreCase(xacmlRequest.getIntermediaryNpi())) {
-                    fromProviderMatched = true;
-                }
-            }
+    /**
+     * Returns the pages of the given search result; the next page is only requested once the previous one has been
+     * processed.
+     */
+    private Iterable<Bundle> pages(Bundle firstPage) {
+        return FhirBundlePageIterator.pages(fhirClient, firstPage);
+    }
+
+    private static <T extends Resource> List<T> resourcesOfType(Bundle page, Class<T> type) {
+        return page.getEntry().stream()
+                .map(Bundle.BundleEntryComponent::getResource)
+                .filter(type::isInstance)
+                .map(type::cast)
+                .collect(Collectors.toList());
+    }
 
-            //Check purpose of use
-            if (tempConsent.hasPurpose()) {
-                int filteredPurposeSize = tempConsent.getPurpose().stream()
-                        .filter(pou -> pou.getCode().equals(xacmlRequest.getPurposeOfUse().getPurposeFhir()))
-                        .collect(Collectors.toList()).size();
+    /**
+     * Returns the patients of the given consents that are included in the same page of the search result.
+     */
+    private static List<Patient> includedPatients(List<Consent> consents, Bundle page) {
+        Map<String, Patient> patientsById = resourcesOfType(page, Patient.class).stream()
+                .filter(Resource::hasIdElement)
+                .collect(Collectors.toMap(patient -> patient.getIdElement().toUnqualifiedVersionless().getValue(),
+                        Function.identity(), (first, second) -> first));
+
+        return consents.stream()
+                .map(Consent::getPatient)
+                .filter(Reference::hasReference)
+                .map(reference -> patientsById.get(new IdType(reference.getReference())
+                        .toUnqualifiedVersionless().getValue()))
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+    }
 
-                if (filteredPurposeSize > 0) {
-                    purposeOfUseMatched = true;
-                }
-            }
+    /**
+     * Points the actor references of the consents at the actor resources included in the same page of the search
+     * result, where the client did not resolve them already.
+     */
+    private static void resolveActorReferences(List<Consent> consents, Bundle page) {
+        Map<String, Resource> resourcesById = page.getEntry().stream()
+                .map(Bundle.BundleEntryComponent::getResource)
+                .filter(Resource::hasIdElement)
+                .collect(Collectors.toMap(resource -> resource.getIdElement().toUnqualifiedVersionless().getValue(),
+                        Function.identity(), (first, second) -> first));
+
+        consents.stream()
+                .flatMap(consent -> consent.getActor().stream())
+                .map(Consent.ConsentActorComponent::getReference)
+                .filter(reference -> reference.getResource() == null && reference.hasReference())
+                .forEach(reference -> {
+                    Resource actor = resourcesById.get(new IdType(reference.getReference())
+                            .toUnqualifiedVersionless().getValue());
+                    if (actor != null) {
+                        reference.setResource(actor);
+                    }
+                });
+    }
 
-            //Add to the list only when all the checks are passed
-            if (toProviderMatched && fromProviderMatched && purposeOfUseMatched) {
-                matchingConsents.add(tempConsent);
+    private List<Consent> filterMatchingConsentsFromBundle(List<Consent> retrievedConsents, ConsentMatcher consentMatcher) {
+        //Loop through the consents to filter out those that match the xacmlRequest
+        List<Consent> matchingConsents = new ArrayList<>();
+        for (Consent consent : retrievedConsents) {
+            if (consentMatcher.matches(consent)) {
+                matchingConsents.add(consent);
             }
         }
 
@@ -16,10 +16,8 @@
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.Arrays;
 import java.util.List;
-import java.util.UUID;
 
 import static gov.samhsa.c2s.contexthandler.service.util.AssertionUtils.assertPoliciesNotEmpty;
 import static gov.samhsa.c2s.contexthandler.service.util.AssertionUtils.assertPolicyId;
@@ -34,6 +32,17 @@ public class JdbcPolicyProviderImpl implements PolicyProvider {
             + " and consent.status = 'CONSENT_SIGNED'"
             + " and now() between consent.start_date and consent.end_date";
 
+    /**
+     * Selects the same consents as {@link #SQL_GET_XACML_CONSENT_WC} with a bounded range on the policy id prefix,
+     * which the database can always resolve through an index on {@code consent.patient_id}, and in which the
+     * {@code _} and {@code %} characters of a patient id are not treated as wildcards.
+     */
+    public static final String SQL_GET_XACML_CONSENT_RANGE = "select consent.consent_reference_id, consent.xacml_ccd  "
+            + " from consent "
+            + " where consent.patient_id >= ? and consent.patient_id < ?"
+            + " and consent.status = 'CONSENT_SIGNED'"
+            + " and now() between consent.start_date and consent.end_date";
+
     private static final String PERCENTILE = "%";
 
     private static final String DELIMITER_AMPERSAND = "&";
@@ -46,8 +55,6 @@ public class JdbcPolicyProviderImpl implements PolicyProvider {
     private ContextHandlerProperties contextHandlerProperties;
 
     @Autowired
-    private DataSource dataSource;
-
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
@@ -55,34 +62,27 @@ public class JdbcPolicyProviderImpl implements PolicyProvider {
     @Autowired
     private XacmlPolicySetService xacmlPolicySetService;
 
-    JdbcTemplate getJdbcTemplate() {
-        return new JdbcTemplate(dataSource);
-
-    }
-
-
     @Override
     public List<Evaluatable> getPolicies(XacmlRequestDto xacmlRequest) throws NoPolicyFoundException, PolicyProviderException {
 
         final String mrn = xacmlRequest.getPatientId().getExtension();
         final String mrnDomain = xacmlRequest.getPatientId().getRoot();
 
-        final String policyId = toPolicyId(mrn, mrnDomain,
+        final String policyIdPrefix = toPolicyIdPrefix(mrn, mrnDomain,
                 xacmlRequest.getRecipientNpi(),
                 xacmlRequest.getIntermediaryNpi());
 
         // Get all policies from db
-        final PolicyContainerDto policies = getPolicies(policyId);
+        final PolicyContainerDto policies = getPolicies(policyIdPrefix);
 
         //PolicyDto policyDto = new PolicyDto();
-        final Evaluatable policySet = xacmlPolicySetService.getPoliciesCombinedAsPolicySet(policies, UUID
-                        .randomUUID().toString(),
+        final Evaluatable policySet = xacmlPolicySetService.getPoliciesCombinedAsPolicySet(xacmlRequest, policies,
                 PolicyCombiningAlgIds.DENY_OVERRIDES.getUrn());
 
         return Arrays.asList(policySet);
     }
 
-    private String toPolicyId(String pid, String pidDomain,
+    private String toPolicyIdPrefix(String pid, String pidDomain,
                               String recipientSubjectNPI, String intermediarySubjectNPI) {
         final StringBuilder policyIdBuilder = new StringBuilder();
         policyIdBuilder.append(pid);
@@ -96,32 +96,46 @@ private String toPolicyId(String pid, String pidDomain,
         policyIdBuilder.append(DELIMITER_COLON);
         policyIdBuilder.append(intermediarySubjectNPI);
         policyIdBuilder.append(DELIMITER_COLON);
-        policyIdBuilder.append(PERCENTILE);
         return policyIdBuilder.toString();
     }
 
-    private PolicyContainerDto getPolicies(String policyId) {
+    private PolicyContainerDto getPolicies(String policyIdPrefix) {
 
         // Assert policy id
-        assertPolicyId(policyId);
+        assertPolicyId(policyIdPrefix);
 
         // get policies from pcm database
-        List<PolicyDto> policies = getPoliciesFromDb(policyId);
+        List<PolicyDto> policies = getPoliciesFromDb(policyIdPrefix);
 
         // Assert that at least one policy is found
-        assertPoliciesNotEmpty(policies, policyId);
+        assertPoliciesNotEmpty(policies, policyIdPrefix);
 
         return PolicyContainerDto.builder().policies(policies).build();
 
     }
 
-    public List<PolicyDto> getPoliciesFromDb(String policyId) {
-        jdbcTemplate = getJdbcTemplate();
-
-        List<PolicyDto> policies = this.jdbcTemplate.query(
-                SQL_GET_XACML_CONSENT_WC, new Object[]{policyId},
-                policyDtoRowMapper);
+    public List<PolicyDto> getPoliciesFromDb(String policyIdPrefix) {
+        final List<PolicyDto> policies;
+        if (contextHandlerProperties.getJdbcPolicyProvider().getQueryMode()
+                == ContextHandlerProperties.JdbcPolicyProvider.QueryMode.LIKE) {
+            policies = jdbcTemplate.query(
+                    SQL_GET_XACML_CONSENT_WC, new Object[]{policyIdPrefix + PERCENTILE},
+                    policyDtoRowMapper);
+        } else {
+            policies = jdbcTemplate.query(
+                    SQL_GET_XACML_CONSENT_RANGE, new Object[]{policyIdPrefix, toUpperBound(policyIdPrefix)},
+                    policyDtoRowMapper);
+        }
         logger.info("Consent is queried.");
         return policies;
     }
+
+    /**
+     * Gets the smallest string that is greater than every string starting with the given prefix, by incrementing its
+     * last character. The prefix always ends with {@link #DELIMITER_COLON}, so the bound ends with {@code ;}.
+     */
+    private static String toUpperBound(String policyIdPrefix) {
+        final int last = policyIdPrefix.length() - 1;
+        return policyIdPrefix.substring(0, last) + (char) (policyIdPrefix.charAt(last) + 1);
+    }
 }
@@ -18,7 +18,6 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.UUID;
 
 @Service
 @Slf4j
@@ -42,8 +41,8 @@ public List<Evaluatable> getPolicies(XacmlRequestDto xacmlRequest) {
         PolicyContainerDto policyContainerDto = PolicyContainerDto.builder().policies(policyDtoList).build();
 
         Evaluatable policySet = xacmlPolicySetService.getPoliciesCombinedAsPolicySet(
+                xacmlRequest,
                 policyContainerDto,
-                UUID.randomUUID().toString(),
                 PolicyCombiningAlgIds.DENY_OVERRIDES.getUrn()
         );
 
@@ -5,6 +5,9 @@
 import gov.samhsa.c2s.contexthandler.service.exception.C2SAuditException;
 import gov.samhsa.c2s.contexthandler.service.exception.NoPolicyFoundException;
 import gov.samhsa.c2s.contexthandler.service.exception.PolicyProviderException;
+import org.herasaf.xacml.core.policy.Evaluatable;
+
+import java.util.List;
 
 /**
  * The Interface PolicyDecisionPointService.
@@ -14,4 +17,27 @@ public interface PolicyDecisionPointService {
     XacmlResponseDto evaluateRequest(XacmlRequestDto xacmlRequest)
             throws C2SAuditException, NoPolicyFoundException,
             PolicyProviderException;
+
+    /**
+     * Gets the policies that apply to the given request from the policy provider.
+     *
+     * @param xacmlRequest the xacml request
+     * @return the policies
+     * @throws NoPolicyFoundException  the no policy found exception
+     * @throws PolicyProviderException the policy provider exception
+     */
+    List<Evaluatable> getPolicies(XacmlRequestDto xacmlRequest)
+            throws NoPolicyFoundException, PolicyProviderException;
+
+    /**
+     * Evaluates the given request against policies that were already retrieved for it, so that requests selecting
+     * the same policies can share one retrieval.
+     *
+     * @param xacmlRequest the xacml request
+     * @param policies     the policies, as returned by {@link #getPolicies(XacmlRequestDto)}
+     * @return the xacml response
+     * @throws C2SAuditException the c2s audit exception
+     */
+    XacmlResponseDto evaluateRequest(XacmlRequestDto xacmlRequest, List<Evaluatable> policies)
+            throws C2SAuditException;
 }
@@ -1,51 +1,37 @@
 package gov.samhsa.c2s.contexthandler.service;
 
-import ch.qos.logback.audit.AuditException;
 import gov.samhsa.c2s.common.audit.AuditClient;
-import gov.samhsa.c2s.common.audit.PredicateKey;
-import gov.samhsa.c2s.common.document.accessor.DocumentAccessor;
-import gov.samhsa.c2s.common.document.accessor.DocumentAccessorException;
-import gov.samhsa.c2s.common.document.converter.DocumentXmlConverter;
-import gov.samhsa.c2s.common.document.converter.DocumentXmlConverterException;
-import gov.samhsa.c2s.contexthandler.service.audit.ContextHandlerAuditVerb;
-import gov.samhsa.c2s.contexthandler.service.audit.ContextHandlerPredicateKey;
+import gov.samhsa.c2s.contexthandler.service.audit.PolicyAuditEvent;
+import gov.samhsa.c2s.contexthandler.service.audit.PolicyAuditQueue;
 import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
 import gov.samhsa.c2s.contexthandler.service.dto.XacmlResponseDto;
 import gov.samhsa.c2s.contexthandler.service.exception.C2SAuditException;
 import gov.samhsa.c2s.contexthandler.service.exception.NoPolicyFoundException;
 import gov.samhsa.c2s.contexthandler.service.exception.PolicyProviderException;
 import gov.samhsa.c2s.contexthandler.service.util.RequestGenerator;
+import gov.samhsa.c2s.contexthandler.service.xacml.RequestScopedPolicyRetrievalPoint;
 import lombok.extern.slf4j.Slf4j;
-import org.herasaf.xacml.core.WritingException;
 import org.herasaf.xacml.core.api.PDP;
-import org.herasaf.xacml.core.api.PolicyRepository;
-import org.herasaf.xacml.core.api.PolicyRetrievalPoint;
-import org.herasaf.xacml.core.api.UnorderedPolicyRepository;
 import org.herasaf.xacml.core.context.RequestMarshaller;
 import org.herasaf.xacml.core.context.impl.RequestType;
 import org.herasaf.xacml.core.context.impl.ResponseType;
 import org.herasaf.xacml.core.context.impl.ResultType;
 import org.herasaf.xacml.core.policy.Evaluatable;
-import org.herasaf.xacml.core.policy.PolicyMarshaller;
 import org.herasaf.xacml.core.policy.impl.AttributeAssignmentType;
 import org.herasaf.xacml.core.policy.impl.ObligationType;
-import org.herasaf.xacml.core.simplePDP.SimplePDPFactory;
+import org.herasaf.xacml.core.simplePDP.SimplePDP;
+import org.herasaf.xacml.core.simplePDP.SimplePDPConfiguration;
 import org.herasaf.xacml.core.simplePDP.initializers.InitializerExecutor;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.w3c.dom.NodeList;
 
 import javax.annotation.PostConstruct;
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.StringWriter;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 
 /**
  * ss PolicyDecisionPointServiceImpl.
@@ -54,6 +40,11 @@
 @Slf4j
 public class PolicyDecisionPointServiceImpl implements PolicyDecisionPointService {
 
+    private static final String REQUEST_GENERATION_STAGE = "request-generation";
+    private static final String POLICY_RETRIEVAL_STAGE_PREFIX = "policy-retrieval.";
+    private static final String AUDIT_STAGE = "audit";
+    private static final String PDP_EVALUATION_STAGE = "pdp-evaluation";
+
     /**
      * The policy provider.
      */
@@ -70,70 +61,92 @@ public class PolicyDecisionPointServiceImpl implements PolicyDecisionPointServic
     private Optional<AuditClient> auditClient;
 
     /**
-     * The document accessor.
+     * The policy audit queue.
      */
     @Autowired
-    private DocumentAccessor documentAccessor;
+    private PolicyAuditQueue policyAuditQueue;
+
+    @Autowired
+    private EnforcementMetrics enforcementMetrics;
 
     /**
-     * The document xml converter.
+     * The policy retrieval stage, named after the policy provider implementation.
      */
-    @Autowired
-    private DocumentXmlConverter documentXmlConverter;
+    private String policyRetrievalStage;
+
+    /**
+     * The retrieval point of the PDP, which serves the policies of the request evaluated on the calling thread.
+     */
+    private final RequestScopedPolicyRetrievalPoint policyRetrievalPoint = new RequestScopedPolicyRetrievalPoint();
+
+    /**
+     * The PDP shared by all requests.
+     */
+    private PDP pdp;
 
     @Override
     public XacmlResponseDto evaluateRequest(XacmlRequestDto xacmlRequest){
         log.info("evaluateRequest invoked");
 
-        final RequestType request = requestGenerator.generateRequest(xacmlRequest);
-        log.debug(createPDPRequestLogMessage(request));
+        final RequestType request = enforcementMetrics.time(REQUEST_GENERATION_STAGE,
+                () -> requestGenerator.generateRequest(xacmlRequest));
+        if (log.isDebugEnabled()) {
+            log.debug(createPDPRequestLogMessage(request));
+        }
 
         return managePoliciesAndEvaluateRequest(request, xacmlRequest);
     }
 
+    @Override
+    public XacmlResponseDto evaluateRequest(XacmlRequestDto xacmlRequest, List<Evaluatable> policies) {
+        log.info("evaluateRequest invoked with retrieved policies");
+
+        final RequestType request = enforcementMetrics.time(REQUEST_GENERATION_STAGE,
+                () -> requestGenerator.generateRequest(xacmlRequest));
+        if (log.isDebugEnabled()) {
+            log.debug(createPDPRequestLogMessage(request));
+        }
+
+        return evaluateRequest(request, xacmlRequest, policies);
+    }
+
     @PostConstruct
     public void afterPropertiesSet() {
         // initialize herasaf
         InitializerExecutor.runInitializers();
+        policyRetrievalStage = POLICY_RETRIEVAL_STAGE_PREFIX + AopUtils.getTargetClass(policyProvider).getSimpleName();
+        pdp = createSimplePDP();
     }
 
-    private synchronized XacmlResponseDto managePoliciesAndEvaluateRequest(
+    private XacmlResponseDto managePoliciesAndEvaluateRequest(
             RequestType request, XacmlRequestDto xacmlRequest)
             throws C2SAuditException, NoPolicyFoundException,
             PolicyProviderException {
-        PDP pdp = getSimplePDP();
-        deployPolicies(pdp, xacmlRequest);
-        return managePoliciesAndEvaluateRequest(pdp, request);
-    }
-
-    private List<Evaluatable> deployPolicies(PDP pdp, XacmlRequestDto xacmlRequest)
-            throws C2SAuditException, NoPolicyFoundException,
-            PolicyProviderException {
-        final List<Evaluatable> deployedPolicies = getPolicies(xacmlRequest);
-        deployPolicies(pdp, deployedPolicies, xacmlRequest, true);
-        return deployedPolicies;
+        final List<Evaluatable> policies = getPolicies(xacmlRequest);
+        return evaluateRequest(request, xacmlRequest, policies);
     }
 
-    List<Evaluatable> getPolicies(XacmlRequestDto xacmlRequest) {
-
-        return policyProvider.getPolicies(xacmlRequest);
+    private XacmlResponseDto evaluateRequest(RequestType request, XacmlRequestDto xacmlRequest,
+                                             List<Evaluatable> policies) throws C2SAuditException {
+        enforcementMetrics.run(AUDIT_STAGE, () -> auditPolicies(policies, xacmlRequest));
+        return evaluateRequest(request, policies);
     }
 
+    @Override
+    public List<Evaluatable> getPolicies(XacmlRequestDto xacmlRequest) {
 
-    private XacmlResponseDto managePoliciesAndEvaluateRequest(PDP pdp,
-                                                              RequestType request) {
-        final XacmlResponseDto xacmlResponse = evaluateRequest(pdp, request);
-        undeployAllPolicies(pdp);
-        return xacmlResponse;
+        return enforcementMetrics.time(policyRetrievalStage, () -> policyProvider.getPolicies(xacmlRequest));
     }
 
-    private XacmlResponseDto evaluateRequest(PDP simplePDP, RequestType request) {
+    private XacmlResponseDto evaluateRequest(RequestType request, List<Evaluatable> policies) {
         //final XacmlResponseDto xacmlResponse = new XacmlResponseDto();
         List<String> pdpObligations = new ArrayList<>();
         final XacmlResponseDto xacmlResponse = XacmlResponseDto.builder().pdpDecision("DENY").pdpObligations
                 (pdpObligations).build();
 
-        final ResponseType response = simplePDP.evaluate(request);
+        // Each request is evaluated against its own policies, bound to the evaluating thread, so no lock is needed
+        final ResponseType response = enforcementMetrics.time(PDP_EVALUATION_STAGE,
+                () -> policyRetrievalPoint.withEvaluatables(policies, () -> pdp.evaluate(request)));
         for (final ResultType r : response.getResults()) {
             log.debug("PDP Decision: " + r.getDecision().toString());
             xacmlResponse.setPdpDecision(r.getDecision().toString());
@@ -154,6 +167,7 @@ private XacmlResponseDto evaluateRequest(PDP simplePDP, RequestType request) {
             }
         }
 
+        enforcementMetrics.recordDecision(xacmlResponse.getPdpDecision(), xacmlResponse.getPdpObligations().size());
         log.debug("xacmlResponse.pdpDecision: "
                 + xacmlResponse.getPdpDecision());
         log.debug("xacmlResponse is ready!");
@@ -161,63 +175,17 @@ private XacmlResponseDto evaluateRequest(PDP simplePDP, RequestType request) {
     }
 
 
-    void deployPolicies(PDP pdp, List<Evaluatable> policies,
-                        XacmlRequestDto xacmlRequest, boolean isAudited) {
-        try {
-            final PolicyRetrievalPoint repo = pdp.getPolicyRepository();
-            final UnorderedPolicyRepository repository = (UnorderedPolicyRepository) repo;
-            repository.deploy(policies);
-            if (isAudited) {
-                for (final Evaluatable policy : policies) {
-                    auditPolicy(policy, xacmlRequest);
-                }
-            }
-        } catch (AuditException | WritingException | IOException
-                | DocumentAccessorException | DocumentXmlConverterException e) {
-            log.error(e.getMessage(), e);
-            undeployAllPolicies(pdp);
-            throw new C2SAuditException(e.getMessage(), e);
+    /**
+     * Queues an audit event for each policy; the policies are serialized and audited in the background by the
+     * {@link PolicyAuditQueue}.
+     */
+    void auditPolicies(List<Evaluatable> policies, XacmlRequestDto xacmlRequest) {
+        if (!auditClient.isPresent()) {
+            return;
         }
-    }
-
-    private void undeployAllPolicies(PDP pdp) {
-        final PolicyRepository repo = (PolicyRepository) pdp
-                .getPolicyRepository();
-        final List<Evaluatable> policies = new LinkedList<>(
-                repo.getDeployment());
         for (final Evaluatable policy : policies) {
-            repo.undeploy(policy.getId());
-        }
-    }
-
-    private void auditPolicy(Evaluatable policy, XacmlRequestDto xacmlRequest)
-            throws WritingException, IOException, DocumentAccessorException,
-            AuditException {
-        final StringWriter writer = new StringWriter();
-        PolicyMarshaller.marshal(policy, writer);
-
-        Map<PredicateKey, String> predicateMap = null;
-
-        if (auditClient.isPresent()) {
-            predicateMap = auditClient.get()
-                    .createPredicateMap();
-            final String policyString = writer.toString();
-            writer.close();
-            final NodeList policyIdNodeList = documentAccessor.getNodeList(
-                    documentXmlConverter.loadDocument(policyString), "//@PolicyId");
-            Set<String> policyIdSet = null;
-            if (policyIdNodeList.getLength() > 0) {
-                policyIdSet = new HashSet<>();
-                for (int i = 0; i < policyIdNodeList.getLength(); i++) {
-                    policyIdSet.add(policyIdNodeList.item(i).getNodeValue());
-                }
-            }
-            predicateMap.put(ContextHandlerPredicateKey.XACML_POLICY, policyString);
-            if (policyIdSet != null) {
-                predicateMap.put(ContextHandlerPredicateKey.XACML_POLICY_ID, policyIdSet.toString());
-            }
-            auditClient.get().audit(this, xacmlRequest.getMessageId(), ContextHandlerAuditVerb.DEPLOY_POLICY,
-                    xacmlRequest.getPatientId().getExtension(), predicateMap);
+            policyAuditQueue.offer(new PolicyAuditEvent(this, xacmlRequest.getMessageId(),
+                    xacmlRequest.getPatientId().getExtension(), policy));
         }
     }
 
@@ -233,7 +201,19 @@ private String createPDPRequestLogMessage(RequestType request) {
         return logMsgPrefix + errMsg;
     }
 
-    private PDP getSimplePDP() {
-        return SimplePDPFactory.getSimplePDP();
+    /**
+     * Creates the PDP that retrieves the policies of the request evaluated on the calling thread.
+     * <p>
+     * The initializers are run once in {@link #afterPropertiesSet()}, so the PDP is instantiated directly instead of
+     * going through {@link org.herasaf.xacml.core.simplePDP.SimplePDPFactory}, which re-enters the globally
+     * synchronized {@link InitializerExecutor#runInitializers()}. It is created only once, as the
+     * {@link SimplePDP} constructor logs and sets the JVM-wide default time zone.
+     *
+     * @return the shared PDP
+     */
+    private PDP createSimplePDP() {
+        final SimplePDPConfiguration configuration = new SimplePDPConfiguration();
+        configuration.setPolicyRetrievalPoint(policyRetrievalPoint);
+        return new SimplePDP(configuration);
     }
 }
@@ -0,0 +1,90 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.service.dto.PatientIdDto;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
+import lombok.Value;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, expiring cache of the combined policy sets built by {@link XacmlPolicySetService}.
+ * <p>
+ * Entries are keyed by the request attributes that select the consents and by a digest of the consent content, so a
+ * revoked, expired or changed consent produces a new key instead of a stale hit. The cache statistics are published as
+ * actuator metrics under {@code cache.policy-set}.
+ */
+@Component
+public class PolicySetCache implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "cache.policy-set.";
+
+    private final boolean enabled;
+    private final Cache<Key, Evaluatable> cache;
+
+    @Autowired
+    public PolicySetCache(ContextHandlerProperties contextHandlerProperties) {
+        final ContextHandlerProperties.PolicySetCache properties = contextHandlerProperties.getPolicySetCache();
+        this.enabled = properties.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getExpireAfterWriteInSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public Evaluatable get(Key key, Supplier<Evaluatable> policySetSupplier) {
+        if (!enabled) {
+            return policySetSupplier.get();
+        }
+        return cache.get(key, ignored -> policySetSupplier.get());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final CacheStats stats = cache.stats();
+        final List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "size", cache.estimatedSize()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit", stats.hitCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "miss", stats.missCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "eviction", stats.evictionCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit.ratio", stats.hitRate()));
+        return metrics;
+    }
+
+    @Value
+    public static class Key {
+        String patientIdRoot;
+        String patientIdExtension;
+        String recipientNpi;
+        String intermediaryNpi;
+        String purposeOfUse;
+        String policyCombiningAlgId;
+        String policiesDigest;
+
+        public static Key of(XacmlRequestDto xacmlRequest, String policyCombiningAlgId, String policiesDigest) {
+            final Optional<PatientIdDto> patientId = Optional.ofNullable(xacmlRequest.getPatientId());
+            return new Key(
+                    patientId.map(PatientIdDto::getRoot).orElse(null),
+                    patientId.map(PatientIdDto::getExtension).orElse(null),
+                    xacmlRequest.getRecipientNpi(),
+                    xacmlRequest.getIntermediaryNpi(),
+                    Optional.ofNullable(xacmlRequest.getPurposeOfUse()).map(Enum::name).orElse(null),
+                    policyCombiningAlgId,
+                    policiesDigest);
+        }
+    }
+}
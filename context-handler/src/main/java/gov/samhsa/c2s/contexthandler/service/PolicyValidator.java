@@ -0,0 +1,60 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
+import gov.samhsa.c2s.contexthandler.service.util.PolicyDigestUtils;
+import gov.samhsa.c2s.contexthandler.service.util.PolicyValidationUtils;
+import org.herasaf.xacml.core.SyntaxException;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+
+/**
+ * Unmarshals the policies to be combined. A policy is valid when it can be unmarshalled; unless the configured
+ * {@link ContextHandlerProperties.PolicyValidation.Mode} is {@code OFF}, the policies are also checked against the
+ * XACML policy schema.
+ * <p>
+ * In {@code ON_FIRST_SIGHT} mode the digests of the policies that passed the schema check are kept in a bounded
+ * cache, so an unchanged consent is checked once and only unmarshalled afterwards.
+ */
+@Component
+public class PolicyValidator {
+
+    private final ContextHandlerProperties.PolicyValidation.Mode mode;
+    private final Cache<String, Boolean> validatedPolicyDigests;
+
+    @Autowired
+    public PolicyValidator(ContextHandlerProperties contextHandlerProperties) {
+        final ContextHandlerProperties.PolicyValidation properties = contextHandlerProperties.getPolicyValidation();
+        this.mode = properties.getMode();
+        this.validatedPolicyDigests = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .build();
+    }
+
+    public Evaluatable validateAndUnmarshal(PolicyDto policy) throws SyntaxException {
+        switch (mode) {
+            case ALWAYS:
+                validateAgainstSchema(policy);
+                break;
+            case ON_FIRST_SIGHT:
+                final String digest = PolicyDigestUtils.digest(Collections.singletonList(policy));
+                if (validatedPolicyDigests.getIfPresent(digest) == null) {
+                    validateAgainstSchema(policy);
+                    validatedPolicyDigests.put(digest, Boolean.TRUE);
+                }
+                break;
+            default:
+                break;
+        }
+        return PolicyValidationUtils.unmarshal(policy.getPolicy());
+    }
+
+    void validateAgainstSchema(PolicyDto policy) throws SyntaxException {
+        PolicyValidationUtils.validateAgainstSchema(policy.getPolicy());
+    }
+}
@@ -1,10 +1,39 @@
 package gov.samhsa.c2s.contexthandler.service;
 
 import gov.samhsa.c2s.contexthandler.service.dto.PolicyContainerDto;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
 import gov.samhsa.c2s.contexthandler.service.exception.NoPolicyFoundException;
 import gov.samhsa.c2s.contexthandler.service.exception.PolicyProviderException;
+import gov.samhsa.c2s.contexthandler.service.util.PolicyCombiningAlgIds;
 import org.herasaf.xacml.core.policy.Evaluatable;
 
+import java.util.List;
+
 public interface XacmlPolicySetService {
     Evaluatable getPoliciesCombinedAsPolicySet(PolicyContainerDto policies, String policySetId, String policyCombiningAlgId) throws NoPolicyFoundException, PolicyProviderException;
+
+    /**
+     * Gets the policies combined as a policy set, reusing the policy set built for an earlier request with the same
+     * patient, recipient, intermediary, purpose of use and policy content when it is still cached.
+     *
+     * @param xacmlRequest         the xacml request the policies were retrieved for
+     * @param policies             the policies
+     * @param policyCombiningAlgId the policy combining alg id
+     * @return the policy set
+     * @throws NoPolicyFoundException  the no policy found exception
+     * @throws PolicyProviderException the policy provider exception
+     */
+    Evaluatable getPoliciesCombinedAsPolicySet(XacmlRequestDto xacmlRequest, PolicyContainerDto policies, String policyCombiningAlgId) throws NoPolicyFoundException, PolicyProviderException;
+
+    /**
+     * Combines policies that are already unmarshalled into a policy set, without going through their XML form. The
+     * given policies become the children of the policy set as they are, so they must not be modified afterwards.
+     *
+     * @param policies             the policies
+     * @param policySetId          the policy set id, or empty for a random one
+     * @param policyCombiningAlgId the policy combining alg id
+     * @return the policy set
+     * @throws PolicyProviderException the policy provider exception
+     */
+    Evaluatable getPoliciesCombinedAsPolicySet(List<Evaluatable> policies, String policySetId, PolicyCombiningAlgIds policyCombiningAlgId) throws PolicyProviderException;
 }
@@ -4,32 +4,35 @@
 import gov.samhsa.c2s.common.log.LoggerFactory;
 import gov.samhsa.c2s.contexthandler.service.dto.PolicyContainerDto;
 import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
 import gov.samhsa.c2s.contexthandler.service.exception.NoPolicyFoundException;
 import gov.samhsa.c2s.contexthandler.service.exception.PolicyProviderException;
-import gov.samhsa.c2s.contexthandler.service.util.DOMUtils;
-import gov.samhsa.c2s.contexthandler.service.util.PolicyValidationUtils;
-import org.apache.commons.io.IOUtils;
+import gov.samhsa.c2s.contexthandler.service.util.PolicyCombiningAlgIds;
+import gov.samhsa.c2s.contexthandler.service.util.PolicyDigestUtils;
 import org.herasaf.xacml.core.SyntaxException;
+import org.herasaf.xacml.core.combiningAlgorithm.policy.PolicyCombiningAlgorithm;
+import org.herasaf.xacml.core.converter.PolicyCombiningAlgorithmJAXBTypeAdapter;
 import org.herasaf.xacml.core.policy.Evaluatable;
-import org.herasaf.xacml.core.policy.PolicyMarshaller;
+import org.herasaf.xacml.core.policy.impl.EvaluatableIDImpl;
+import org.herasaf.xacml.core.policy.impl.ObjectFactory;
+import org.herasaf.xacml.core.policy.impl.PolicySetType;
+import org.herasaf.xacml.core.policy.impl.PolicyType;
+import org.herasaf.xacml.core.policy.impl.TargetType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.HttpStatusCodeException;
-import org.w3c.dom.Document;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.util.UUID;
+import javax.xml.bind.JAXBElement;
 
-import static gov.samhsa.c2s.contexthandler.service.xacml.XACMLXPath.XPATH_POLICY_SET_ID;
-import static gov.samhsa.c2s.contexthandler.service.xacml.XACMLXPath.XPATH_POLICY_SET_POLICY_COMBINING_ALG_ID;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 
 @Service
 public class XacmlPolicySetServiceImpl implements XacmlPolicySetService {
     public static final String DEFAULT_ENCODING = "UTF-8";
     public static final String DEFAULT_WILDCARD = "*";
-    private static final String POLICY_SET_XML_TEMPLATE_FILE_NAME = "PolicySetTemplate.xml";
     /**
      * The Constant DELIMITER_AMPERSAND.
      */
@@ -42,53 +45,59 @@ public class XacmlPolicySetServiceImpl implements XacmlPolicySetService {
     private static final String PARAM_NAME_FORCE = "force";
     private static final String PARAM_NAME_POLICY_SET_ID = "policySetId";
     private static final String PARAM_NAME_POLICY_COMBINING_ALG_ID = "policyCombiningAlgId";
+    private static final ObjectFactory POLICY_OBJECT_FACTORY = new ObjectFactory();
+    private static final String POLICY_SET_LOOKUP_STAGE = "policy-set-lookup";
+    private static final String POLICY_SET_COMBINATION_STAGE = "policy-set-combination";
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final PolicyCombiningAlgorithmJAXBTypeAdapter policyCombiningAlgorithmAdapter = new PolicyCombiningAlgorithmJAXBTypeAdapter();
 
     @Autowired
     PolicyCombiningAlgIdValidator policyCombiningAlgIdValidator;
 
+    @Autowired
+    PolicySetCache policySetCache;
+
+    @Autowired
+    PolicyValidator policyValidator;
+
+    @Autowired
+    EnforcementMetrics enforcementMetrics;
+
+    @Override
+    public Evaluatable getPoliciesCombinedAsPolicySet(XacmlRequestDto xacmlRequest, PolicyContainerDto policies, String policyCombiningAlgId) throws NoPolicyFoundException, PolicyProviderException {
+        final String validatedPolicyCombiningAlgId = policyCombiningAlgIdValidator
+                .validateAndReturn(policyCombiningAlgId);
+        final PolicySetCache.Key key = PolicySetCache.Key.of(xacmlRequest, validatedPolicyCombiningAlgId,
+                PolicyDigestUtils.digest(policies.getPolicies()));
+        return enforcementMetrics.time(POLICY_SET_LOOKUP_STAGE, () -> policySetCache.get(key,
+                () -> getPoliciesCombinedAsPolicySet(policies, UUID.randomUUID().toString(),
+                        validatedPolicyCombiningAlgId)));
+    }
+
     @Override
     public Evaluatable getPoliciesCombinedAsPolicySet(PolicyContainerDto policies, String policySetId, String policyCombiningAlgId) throws NoPolicyFoundException, PolicyProviderException {
+        return enforcementMetrics.time(POLICY_SET_COMBINATION_STAGE,
+                () -> unmarshalAndCombine(policies, policySetId, policyCombiningAlgId));
+    }
+
+    @Override
+    public Evaluatable getPoliciesCombinedAsPolicySet(List<Evaluatable> policies, String policySetId, PolicyCombiningAlgIds policyCombiningAlgId) throws PolicyProviderException {
+        return enforcementMetrics.time(POLICY_SET_COMBINATION_STAGE, () -> combine(policies, policySetId,
+                policyCombiningAlgIdValidator.validateAndReturn(policyCombiningAlgId.getUrn())));
+    }
+
+    private Evaluatable unmarshalAndCombine(PolicyContainerDto policies, String policySetId, String policyCombiningAlgId) {
         try {
             // Validate policyCombiningAlgId
             policyCombiningAlgId = policyCombiningAlgIdValidator
                     .validateAndReturn(policyCombiningAlgId);
 
-
-            // Construct a policy set template
-            final Document policySet = initPolicySetTemplate();
-
-            // Set policySetId and policyCombiningAlgId
-            if (!StringUtils.hasText(policySetId)) {
-                policySetId = UUID.randomUUID().toString();
+            final List<Evaluatable> evaluatables = new ArrayList<>(policies.getPolicies().size());
+            for (final PolicyDto policy : policies.getPolicies()) {
+                evaluatables.add(policyValidator.validateAndUnmarshal(policy));
             }
-            DOMUtils.getNode(policySet, XPATH_POLICY_SET_ID).get()
-                    .setNodeValue(policySetId);
-            DOMUtils.getNode(policySet, XPATH_POLICY_SET_POLICY_COMBINING_ALG_ID)
-                    .get().setNodeValue(policyCombiningAlgId);
-
-            // Append all policies to the policy set template
-            policies.getPolicies()
-                    .stream()
-                    .map(PolicyDto::getPolicy)
-                    .map(DOMUtils::bytesToDocument)
-                    .map(Document::getDocumentElement)
-                    .map(policy -> policy.cloneNode(true))
-                    .map(clonedPolicy -> policySet.importNode(clonedPolicy, true))
-                    .forEach(
-                            importedPolicy -> policySet.getDocumentElement()
-                                    .appendChild(importedPolicy));
-
-            // Construct and return the response
-            final PolicyDto response = new PolicyDto();
-            response.setId(policySetId);
-            response.setPolicy(DOMUtils.documentToBytes(policySet));
-            response.setValid(PolicyValidationUtils.validate(response.getPolicy()));
-            logger.debug(new String(response.getPolicy()));
-            Evaluatable evaluatable = PolicyMarshaller
-                    .unmarshal(new ByteArrayInputStream(response.getPolicy()));
-            return evaluatable;
+            return combine(evaluatables, policySetId, policyCombiningAlgId);
         } catch (final SyntaxException e) {
             logger.error(e.getMessage(), e);
             throw new PolicyProviderException(e.getMessage(), e);
@@ -103,15 +112,40 @@ public Evaluatable getPoliciesCombinedAsPolicySet(PolicyContainerDto policies, S
         }
     }
 
-    private Document initPolicySetTemplate() {
-        byte[] policySetTemplateBytes = null;
-        try {
-            policySetTemplateBytes = IOUtils.toByteArray(getClass()
-                    .getClassLoader().getResourceAsStream(
-                            POLICY_SET_XML_TEMPLATE_FILE_NAME));
-        } catch (final IOException e) {
-            throw new RuntimeException(e);
+    private Evaluatable combine(List<Evaluatable> policies, String policySetId, String policyCombiningAlgId) {
+        // Set policySetId and policyCombiningAlgId
+        final String combinedPolicySetId = StringUtils.hasText(policySetId) ? policySetId
+                : UUID.randomUUID().toString();
+        final PolicySetType policySet = new PolicySetType();
+        policySet.setPolicySetId(new EvaluatableIDImpl(combinedPolicySetId));
+        policySet.setCombiningAlg(toPolicyCombiningAlgorithm(policyCombiningAlgId));
+        policySet.setTarget(new TargetType());
+
+        // Append all policies to the policy set
+        policies.stream()
+                .map(this::toPolicySetChild)
+                .forEach(policySet.getAdditionalInformation()::add);
+
+        logger.debug(() -> "Combined " + policies.size() + " policies into policy set " + combinedPolicySetId);
+        return policySet;
+    }
+
+    private PolicyCombiningAlgorithm toPolicyCombiningAlgorithm(String policyCombiningAlgId) {
+        final PolicyCombiningAlgorithm policyCombiningAlgorithm = policyCombiningAlgorithmAdapter
+                .unmarshal(policyCombiningAlgId);
+        if (policyCombiningAlgorithm == null) {
+            throw new PolicyProviderException("Unsupported policy combining algorithm: " + policyCombiningAlgId);
+        }
+        return policyCombiningAlgorithm;
+    }
+
+    private JAXBElement<?> toPolicySetChild(Evaluatable evaluatable) {
+        if (evaluatable instanceof PolicyType) {
+            return POLICY_OBJECT_FACTORY.createPolicy((PolicyType) evaluatable);
+        }
+        if (evaluatable instanceof PolicySetType) {
+            return POLICY_OBJECT_FACTORY.createPolicySet((PolicySetType) evaluatable);
         }
-        return DOMUtils.bytesToDocument(policySetTemplateBytes);
+        throw new PolicyProviderException("Unsupported policy type: " + evaluatable.getClass().getName());
     }
 }
@@ -0,0 +1,16 @@
+package gov.samhsa.c2s.contexthandler.service.audit;
+
+import lombok.Value;
+import org.herasaf.xacml.core.policy.Evaluatable;
+
+/**
+ * A policy that was deployed for a request, captured for auditing. The policy is only serialized when the event is
+ * shipped by the {@link PolicyAuditQueue}.
+ */
+@Value
+public class PolicyAuditEvent {
+    Object caller;
+    String messageId;
+    String patientId;
+    Evaluatable policy;
+}
@@ -0,0 +1,208 @@
+package gov.samhsa.c2s.contexthandler.service.audit;
+
+import ch.qos.logback.audit.AuditException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gov.samhsa.c2s.common.audit.AuditClient;
+import gov.samhsa.c2s.common.audit.PredicateKey;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.service.EnforcementMetrics;
+import gov.samhsa.c2s.contexthandler.service.exception.C2SAuditException;
+import gov.samhsa.c2s.contexthandler.service.util.PolicyIdUtils;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.herasaf.xacml.core.WritingException;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.herasaf.xacml.core.policy.PolicyMarshaller;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of the policy audit events, which are serialized and sent to the audit server in batches by a
+ * background worker, so that auditing does not add to the latency of the decisions.
+ * <p>
+ * When the queue is full, an event is handled according to the configured
+ * {@link ContextHandlerProperties.AuditQueue.OverflowPolicy}. The queue depth and the number of shipped, dropped and
+ * failed events are published as actuator metrics under {@code audit.queue}. Nothing is queued when the audit client
+ * is disabled.
+ * <p>
+ * The audit payload of a policy, its marshalled text and policy ids, is computed once per distinct policy instance. The
+ * policy ids are collected from the object graph instead of querying the marshalled policy.
+ */
+@Component
+@Slf4j
+public class PolicyAuditQueue implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "audit.queue.";
+    private static final String AUDIT_SHIPPING_STAGE = "audit-shipping";
+
+    private final Optional<AuditClient> auditClient;
+    private final EnforcementMetrics enforcementMetrics;
+    private final ContextHandlerProperties.AuditQueue properties;
+    private final BlockingQueue<PolicyAuditEvent> queue;
+    private final Cache<Evaluatable, AuditPayload> auditPayloads;
+
+    private final AtomicLong shipped = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread worker;
+
+    @Autowired
+    public PolicyAuditQueue(Optional<AuditClient> auditClient, EnforcementMetrics enforcementMetrics,
+                            ContextHandlerProperties contextHandlerProperties) {
+        this.auditClient = auditClient;
+        this.enforcementMetrics = enforcementMetrics;
+        this.properties = contextHandlerProperties.getAuditQueue();
+        this.queue = new ArrayBlockingQueue<>(properties.getCapacity());
+        // Weak keys are compared by identity, so a policy set served from the PolicySetCache is marshalled only once
+        this.auditPayloads = Caffeine.newBuilder()
+                .weakKeys()
+                .maximumSize(properties.getPayloadCacheMaximumSize())
+                .build();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!auditClient.isPresent()) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::shipUntilStopped, "policy-audit-worker");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops the worker, then ships the events that are still queued.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }
+        running = false;
+        worker.interrupt();
+        worker.join(properties.getShutdownTimeoutInMs());
+    }
+
+    public void offer(PolicyAuditEvent event) {
+        if (!auditClient.isPresent()) {
+            return;
+        }
+        switch (properties.getOverflowPolicy()) {
+            case DROP_OLDEST:
+                while (!queue.offer(event)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                break;
+            case BLOCK:
+                try {
+                    if (!queue.offer(event, properties.getBlockTimeoutInMs(), TimeUnit.MILLISECONDS)) {
+                        drop(event);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop(event);
+                }
+                break;
+            default:
+                if (!queue.offer(event)) {
+                    drop(event);
+                }
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "depth", queue.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "remaining-capacity", queue.remainingCapacity()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "shipped", shipped.get()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "dropped", dropped.get()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "failed", failed.get()));
+        return metrics;
+    }
+
+    private void drop(PolicyAuditEvent event) {
+        dropped.incrementAndGet();
+        log.warn("Policy audit queue is full, dropping the audit event of message: " + event.getMessageId());
+    }
+
+    private void shipUntilStopped() {
+        final int batchSize = properties.getBatchSize();
+        final List<PolicyAuditEvent> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            enforcementMetrics.run(AUDIT_SHIPPING_STAGE, () -> ship(batch));
+            batch.clear();
+        }
+        queue.drainTo(batch);
+        ship(batch);
+    }
+
+    private void ship(List<PolicyAuditEvent> batch) {
+        for (PolicyAuditEvent event : batch) {
+            try {
+                audit(event);
+                shipped.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.error("Unable to audit the policy of message: " + event.getMessageId(), e);
+            }
+        }
+    }
+
+    private void audit(PolicyAuditEvent event) throws AuditException {
+        final AuditPayload payload = auditPayloads.get(event.getPolicy(), PolicyAuditQueue::toAuditPayload);
+
+        final Map<PredicateKey, String> predicateMap = auditClient.get().createPredicateMap();
+        predicateMap.put(ContextHandlerPredicateKey.XACML_POLICY, payload.getPolicy());
+        if (payload.getPolicyIds() != null) {
+            predicateMap.put(ContextHandlerPredicateKey.XACML_POLICY_ID, payload.getPolicyIds());
+        }
+        auditClient.get().audit(event.getCaller(), event.getMessageId(), ContextHandlerAuditVerb.DEPLOY_POLICY,
+                event.getPatientId(), predicateMap);
+    }
+
+    private static AuditPayload toAuditPayload(Evaluatable policy) {
+        final StringWriter writer = new StringWriter();
+        try {
+            PolicyMarshaller.marshal(policy, writer);
+        } catch (WritingException e) {
+            throw new C2SAuditException(e.getMessage(), e);
+        }
+        final Set<String> policyIds = PolicyIdUtils.collectPolicyIds(policy);
+        return new AuditPayload(writer.toString(), policyIds.isEmpty() ? null : policyIds.toString());
+    }
+
+    @Value
+    private static class AuditPayload {
+        String policy;
+        String policyIds;
+    }
+}
@@ -0,0 +1,21 @@
+package gov.samhsa.c2s.contexthandler.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.Valid;
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class XacmlBatchRequestDto {
+
+    @NotEmpty
+    @Valid
+    private List<XacmlRequestDto> requests;
+}
@@ -0,0 +1,22 @@
+package gov.samhsa.c2s.contexthandler.service.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class BatchTooLargeException extends RuntimeException {
+    public BatchTooLargeException() {
+    }
+
+    public BatchTooLargeException(String message) {
+        super(message);
+    }
+
+    public BatchTooLargeException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public BatchTooLargeException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,22 @@
+package gov.samhsa.c2s.contexthandler.service.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class PolicyEnforcementUnavailableException extends RuntimeException {
+    public PolicyEnforcementUnavailableException() {
+    }
+
+    public PolicyEnforcementUnavailableException(String message) {
+        super(message);
+    }
+
+    public PolicyEnforcementUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public PolicyEnforcementUnavailableException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -2,10 +2,10 @@
 
 import gov.samhsa.c2s.contexthandler.service.exception.DOMUtilsException;
 import gov.samhsa.c2s.contexthandler.service.xacml.XACMLNamespaceContext;
+import gov.samhsa.c2s.contexthandler.service.xacml.XACMLXPath;
 import org.springframework.util.Assert;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
@@ -14,18 +14,22 @@
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Optional;
 
 
@@ -36,6 +40,20 @@ public class DOMUtils {
     private static final String DEFAULT_TRANSFORMER_PROPERTY_METHOD = "xml";
     private static final String DEFAULT_TRANSFORMER_PROPERTY_OMIT_XML_DECLARATION = "no";
 
+    // The factories are looked up once; they are not thread safe, so they are only used under their own lock to
+    // create the per-thread builders, transformers and XPath instances below. The builders and transformers are reset
+    // after every use; the XPath instances hold no state of their uses.
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = newDocumentBuilderFactory();
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+    private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
+
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = ThreadLocal.withInitial(DOMUtils::newDocumentBuilder);
+    private static final ThreadLocal<Transformer> TRANSFORMER = ThreadLocal.withInitial(DOMUtils::newTransformer);
+    private static final ThreadLocal<XPath> XPATH = ThreadLocal.withInitial(DOMUtils::newXPath);
+    // The fixed XACML expressions are compiled once per thread, as compiled expressions are not thread safe either
+    private static final ThreadLocal<Map<XACMLXPath.Expression, XPathExpression>> XACML_XPATH_EXPRESSIONS =
+            ThreadLocal.withInitial(DOMUtils::compileXACMLXPathExpressions);
+
     public static Document bytesToDocument(byte[] bytes) {
         String xacmlString;
         try {
@@ -58,26 +76,17 @@ public static String documentToXml(Document xmlDocument) {
         try {
             String xmlString = "";
 
-            final TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer transformer;
-
-            transformer = tf.newTransformer();
-
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION,
-                    DEFAULT_TRANSFORMER_PROPERTY_OMIT_XML_DECLARATION);
-            transformer.setOutputProperty(OutputKeys.METHOD,
-                    DEFAULT_TRANSFORMER_PROPERTY_METHOD);
-            transformer.setOutputProperty(OutputKeys.INDENT,
-                    DEFAULT_TRANSFORMER_PROPERTY_INDENT);
-            transformer
-                    .setOutputProperty(OutputKeys.ENCODING, DEFAULT_ENCODING);
-            transformer.setOutputProperty(
-                    "{http://xml.apache.org/xslt}indent-amount",
-                    DEFAULT_TRANSFORMER_PROPERTY_INDENT_AMOUNT);
+            final Transformer transformer = TRANSFORMER.get();
 
             final StringWriter writer = new StringWriter();
-            transformer.transform(new DOMSource(xmlDocument), new StreamResult(
-                    writer));
+            try {
+                transformer.transform(new DOMSource(xmlDocument), new StreamResult(
+                        writer));
+            } finally {
+                // Clears the parameters and error listener of this use; the output properties are set again after it
+                transformer.reset();
+                setOutputProperties(transformer);
+            }
             xmlString = writer.getBuffer().toString().replaceAll("\n|\r", "");
             Assert.hasText(xmlString,
                     "Document object cannot be converted to XML string!");
@@ -88,16 +97,9 @@ public static String documentToXml(Document xmlDocument) {
     }
 
     public static Optional<Node> getNode(Document xmlDocument,
-                                         String xPathExpr, String... arguments) {
-        xPathExpr = setXpathArguments(xPathExpr, arguments);
-
-        // Create XPath instance
-        final XPath xpath = xpath();
-
-        // Evaluate XPath expression against parsed document
-        Node node = null;
+                                         XACMLXPath.Expression xPathExpr) {
         try {
-            node = (Node) xpath.evaluate(xPathExpr, xmlDocument,
+            final Node node = (Node) XACML_XPATH_EXPRESSIONS.get().get(xPathExpr).evaluate(xmlDocument,
                     XPathConstants.NODE);
             return Optional.ofNullable(node);
         } catch (final XPathExpressionException e) {
@@ -105,35 +107,22 @@ public static Optional<Node> getNode(Document xmlDocument,
         }
     }
 
-    public static Optional<NodeList> getNodeList(Document xmlDocument,
-                                                 String xPathExpr, String... arguments) {
-        xPathExpr = setXpathArguments(xPathExpr, arguments);
-
-        // Create XPath instance
-        final XPath xpath = xpath();
-
+    public static Optional<Node> getNode(Document xmlDocument,
+                                         String xPathExpr) {
         // Evaluate XPath expression against parsed document
-        NodeList nodeList = null;
+        Node node = null;
         try {
-            nodeList = (NodeList) xpath.evaluate(xPathExpr, xmlDocument,
-                    XPathConstants.NODESET);
-            if (nodeList != null && nodeList.getLength() == 0) {
-                nodeList = null;
-            }
-            return Optional.ofNullable(nodeList);
+            node = (Node) XPATH.get().evaluate(xPathExpr, xmlDocument,
+                    XPathConstants.NODE);
+            return Optional.ofNullable(node);
         } catch (final XPathExpressionException e) {
             throw new DOMUtilsException(e);
         }
     }
 
     public static Document xmlToDocument(String xmlString) {
+        final DocumentBuilder db = DOCUMENT_BUILDER.get();
         try {
-            final DocumentBuilderFactory dbf = DocumentBuilderFactory
-                    .newInstance();
-            dbf.setValidating(false);
-            dbf.setNamespaceAware(true);
-            final DocumentBuilder db = dbf.newDocumentBuilder();
-
             final InputSource source = new InputSource(new StringReader(
                     xmlString));
 
@@ -141,23 +130,78 @@ public static Document xmlToDocument(String xmlString) {
             Assert.notNull(doc,
                     "XML string cannot be converted to Document object!");
             return doc;
-        } catch (ParserConfigurationException | SAXException | IOException
-                | IllegalArgumentException e) {
+        } catch (SAXException | IOException | IllegalArgumentException e) {
             throw new DOMUtilsException(e);
+        } finally {
+            db.reset();
         }
     }
 
-    private static String setXpathArguments(String xPath, String... arguments) {
-        for (int i = 0; i < arguments.length; i++) {
-            xPath = xPath.replace("%" + Integer.toString(i + 1), arguments[i]);
+    private static DocumentBuilderFactory newDocumentBuilderFactory() {
+        final DocumentBuilderFactory dbf = DocumentBuilderFactory
+                .newInstance();
+        dbf.setValidating(false);
+        dbf.setNamespaceAware(true);
+        return dbf;
+    }
+
+    private static DocumentBuilder newDocumentBuilder() {
+        synchronized (DOCUMENT_BUILDER_FACTORY) {
+            try {
+                return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            } catch (final ParserConfigurationException e) {
+                throw new DOMUtilsException(e);
+            }
         }
-        return xPath;
     }
 
-    private static XPath xpath() {
+    private static Transformer newTransformer() {
+        final Transformer transformer;
+        synchronized (TRANSFORMER_FACTORY) {
+            try {
+                transformer = TRANSFORMER_FACTORY.newTransformer();
+            } catch (final TransformerConfigurationException e) {
+                throw new DOMUtilsException(e);
+            }
+        }
+        setOutputProperties(transformer);
+        return transformer;
+    }
+
+    private static void setOutputProperties(Transformer transformer) {
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION,
+                DEFAULT_TRANSFORMER_PROPERTY_OMIT_XML_DECLARATION);
+        transformer.setOutputProperty(OutputKeys.METHOD,
+                DEFAULT_TRANSFORMER_PROPERTY_METHOD);
+        transformer.setOutputProperty(OutputKeys.INDENT,
+                DEFAULT_TRANSFORMER_PROPERTY_INDENT);
+        transformer
+                .setOutputProperty(OutputKeys.ENCODING, DEFAULT_ENCODING);
+        transformer.setOutputProperty(
+                "{http://xml.apache.org/xslt}indent-amount",
+                DEFAULT_TRANSFORMER_PROPERTY_INDENT_AMOUNT);
+    }
+
+    private static XPath newXPath() {
         // Create XPath instance
-        final XPath xpath = XPathFactory.newInstance().newXPath();
+        final XPath xpath;
+        synchronized (XPATH_FACTORY) {
+            xpath = XPATH_FACTORY.newXPath();
+        }
         xpath.setNamespaceContext(XACMLNamespaceContext.CONTEXT);
         return xpath;
     }
+
+    private static Map<XACMLXPath.Expression, XPathExpression> compileXACMLXPathExpressions() {
+        final XPath xpath = XPATH.get();
+        final Map<XACMLXPath.Expression, XPathExpression> expressions = new EnumMap<>(XACMLXPath.Expression.class);
+        try {
+            for (final XACMLXPath.Expression expression : XACMLXPath.Expression.values()) {
+                expressions.put(expression, xpath.compile(expression.getXPathExpr()));
+            }
+        } catch (final XPathExpressionException e) {
+            throw new DOMUtilsException(e);
+        }
+        return expressions;
+    }
 }
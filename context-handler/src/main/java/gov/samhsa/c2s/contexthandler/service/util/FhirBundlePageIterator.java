@@ -0,0 +1,54 @@
+package gov.samhsa.c2s.contexthandler.service.util;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import org.hl7.fhir.dstu3.model.Bundle;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the pages of a FHIR search result, starting with the given first page and following the
+ * {@code next} links. A page is only loaded from the server when it is asked for, so a caller that stops early does
+ * not pay for the remaining pages.
+ */
+public class FhirBundlePageIterator implements Iterator<Bundle> {
+
+    private final IGenericClient fhirClient;
+    private Bundle lastPage;
+    private Bundle nextPage;
+
+    public FhirBundlePageIterator(IGenericClient fhirClient, Bundle firstPage) {
+        this.fhirClient = fhirClient;
+        this.nextPage = firstPage;
+    }
+
+    /**
+     * Returns the pages of the given search result, to be iterated over once.
+     *
+     * @param fhirClient the client used to load the next pages
+     * @param firstPage  the first page of the search result, may be null
+     * @return the pages
+     */
+    public static Iterable<Bundle> pages(IGenericClient fhirClient, Bundle firstPage) {
+        return () -> new FhirBundlePageIterator(fhirClient, firstPage);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextPage == null && lastPage != null && lastPage.getLink(Bundle.LINK_NEXT) != null) {
+            nextPage = fhirClient.loadPage().next(lastPage).execute();
+            lastPage = null;
+        }
+        return nextPage != null;
+    }
+
+    @Override
+    public Bundle next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        lastPage = nextPage;
+        nextPage = null;
+        return lastPage;
+    }
+}
@@ -3,23 +3,79 @@
 import javax.xml.bind.*;
 import javax.xml.namespace.QName;
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * JAXB helpers backed by one {@link JAXBContext} per class. The contexts are thread safe and expensive to build, so
+ * they are created once and shared. Marshallers and unmarshallers are not thread safe, so they are borrowed from a
+ * small per-class pool for the duration of a single call.
+ */
 public class JAXBUtils {
 
+    /**
+     * The maximum number of idle marshallers and unmarshallers kept per class.
+     */
+    private static final int MAX_POOLED_PER_CLASS = 16;
+
+    private static final ConcurrentMap<Class<?>, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, Queue<Marshaller>> MARSHALLERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, Queue<Unmarshaller>> UNMARSHALLERS = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the shared JAXB context of the given class, creating it on first use.
+     *
+     * @param contextClass the class bound by the context
+     * @return the JAXB context
+     * @throws JAXBException if the context cannot be created
+     */
+    public static JAXBContext getContext(Class<?> contextClass) throws JAXBException {
+        JAXBContext context = CONTEXTS.get(contextClass);
+        if (context == null) {
+            final JAXBContext newContext = JAXBContext.newInstance(contextClass);
+            context = CONTEXTS.putIfAbsent(contextClass, newContext);
+            if (context == null) {
+                context = newContext;
+            }
+        }
+        return context;
+    }
+
     public static String marshal(Object obj) throws JAXBException {
         return marshal(obj, obj.getClass());
     }
 
+    public static void marshal(Object obj, OutputStream outputStream) throws JAXBException {
+        final Class<?> contextClass = obj.getClass();
+        final Marshaller marshaller = borrowMarshaller(contextClass);
+        try {
+            marshaller.marshal(obj, outputStream);
+        } finally {
+            release(MARSHALLERS, contextClass, marshaller);
+        }
+    }
+
     private static <T> String marshal(Object obj, Class<T> contextClass)
             throws JAXBException {
-        final JAXBContext context = JAXBContext.newInstance(contextClass);
-        final Marshaller marshaller = context.createMarshaller();
         final StringWriter stringWriter = new StringWriter();
-        marshaller.marshal(obj, stringWriter);
-        final String output = stringWriter.toString();
-        return output;
+        marshal(obj, contextClass, stringWriter);
+        return stringWriter.toString();
+    }
+
+    private static void marshal(Object obj, Class<?> contextClass, Writer writer) throws JAXBException {
+        final Marshaller marshaller = borrowMarshaller(contextClass);
+        try {
+            marshaller.marshal(obj, writer);
+        } finally {
+            release(MARSHALLERS, contextClass, marshaller);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -32,16 +88,39 @@ public static <T> String marshalWithoutRootElement(T obj)
 
     public static <T> T unmarshalFromXml(Class<T> clazz, String xml)
             throws JAXBException, UnsupportedEncodingException {
-        final JAXBContext context = JAXBContext.newInstance(clazz);
-        return unmarshalFromXml(context, clazz, xml);
+        return unmarshal(clazz, new ByteArrayInputStream(xml.getBytes("UTF-8")));
     }
 
     @SuppressWarnings("unchecked")
-    private static <T> T unmarshalFromXml(JAXBContext context, Class<T> clazz,
-                                          String xml) throws JAXBException, UnsupportedEncodingException {
-        final Unmarshaller um = context.createUnmarshaller();
-        final ByteArrayInputStream input = new ByteArrayInputStream(
-                xml.getBytes("UTF-8"));
-        return (T) um.unmarshal(input);
+    public static <T> T unmarshal(Class<T> clazz, InputStream inputStream) throws JAXBException {
+        final Unmarshaller unmarshaller = borrowUnmarshaller(clazz);
+        try {
+            return (T) unmarshaller.unmarshal(inputStream);
+        } finally {
+            release(UNMARSHALLERS, clazz, unmarshaller);
+        }
+    }
+
+    private static Marshaller borrowMarshaller(Class<?> contextClass) throws JAXBException {
+        final Marshaller marshaller = poll(MARSHALLERS, contextClass);
+        return marshaller != null ? marshaller : getContext(contextClass).createMarshaller();
+    }
+
+    private static Unmarshaller borrowUnmarshaller(Class<?> contextClass) throws JAXBException {
+        final Unmarshaller unmarshaller = poll(UNMARSHALLERS, contextClass);
+        return unmarshaller != null ? unmarshaller : getContext(contextClass).createUnmarshaller();
+    }
+
+    private static <T> T poll(ConcurrentMap<Class<?>, Queue<T>> pools, Class<?> contextClass) {
+        final Queue<T> pool = pools.get(contextClass);
+        return pool == null ? null : pool.poll();
+    }
+
+    private static <T> void release(ConcurrentMap<Class<?>, Queue<T>> pools, Class<?> contextClass, T pooled) {
+        final Queue<T> pool = pools.computeIfAbsent(contextClass, ignored -> new ConcurrentLinkedQueue<>());
+        // The size is only a soft bound, as concurrent releases may exceed it slightly
+        if (pool.size() < MAX_POOLED_PER_CLASS) {
+            pool.offer(pooled);
+        }
     }
 }
@@ -4,14 +4,13 @@
 import gov.samhsa.c2s.contexthandler.service.dto.PolicyContentDto;
 import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
 import gov.samhsa.c2s.contexthandler.service.exception.PolicyIdNotFoundException;
+import gov.samhsa.c2s.contexthandler.service.xacml.XACMLXPath;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import java.util.Optional;
 
 import static gov.samhsa.c2s.contexthandler.service.util.DOMUtils.bytesToDocument;
-import static gov.samhsa.c2s.contexthandler.service.xacml.XACMLXPath.XPATH_POLICY_ID;
-import static gov.samhsa.c2s.contexthandler.service.xacml.XACMLXPath.XPATH_POLICY_SET_ID;
 
 
 public class MappingUtils {
@@ -20,12 +19,12 @@ public static PolicyDto toPolicyDto(byte[] policy) {
         String id = null;
         final Document policyDoc = bytesToDocument(policy);
         final Optional<Node> policySetId = DOMUtils.getNode(policyDoc,
-                XPATH_POLICY_SET_ID);
+                XACMLXPath.Expression.POLICY_SET_ID);
         if (policySetId.isPresent()) {
             id = policySetId.get().getNodeValue();
         } else {
             final Optional<Node> policyId = DOMUtils.getNode(policyDoc,
-                    XPATH_POLICY_ID);
+                    XACMLXPath.Expression.POLICY_ID);
             if (policyId.isPresent()) {
                 id = policyId.get().getNodeValue();
             }
@@ -0,0 +1,40 @@
+package gov.samhsa.c2s.contexthandler.service.util;
+
+import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+
+
+public class PolicyDigestUtils {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * Computes a digest over the content of the given policies in their given order. The length of every policy is
+     * digested ahead of its content, so that different splits of the same bytes do not produce the same digest.
+     *
+     * @param policies the policies
+     * @return the Base64 encoded digest
+     */
+    public static String digest(final List<PolicyDto> policies) {
+        final MessageDigest messageDigest = newMessageDigest();
+        for (final PolicyDto policy : policies) {
+            final byte[] content = policy.getPolicy() == null ? new byte[0] : policy.getPolicy();
+            messageDigest.update(ByteBuffer.allocate(Integer.BYTES).putInt(content.length).array());
+            messageDigest.update(content);
+        }
+        return Base64.getEncoder().encodeToString(messageDigest.digest());
+    }
+
+    private static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package gov.samhsa.c2s.contexthandler.service.util;
 
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
 import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
+import gov.samhsa.c2s.contexthandler.service.exception.PolicyProviderException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,6 +10,10 @@
 import org.springframework.jdbc.support.lob.LobHandler;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
@@ -17,12 +23,17 @@
 @Component
 public class PolicyDtoRowMapper implements RowMapper<PolicyDto> {
 
+    private static final int BUFFER_SIZE = 8192;
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     /** The lob handler. */
     @Autowired
     private LobHandler lobHandler;
 
+    @Autowired
+    private ContextHandlerProperties contextHandlerProperties;
+
     /*
      * (non-Javadoc)
      *
@@ -32,12 +43,40 @@ public class PolicyDtoRowMapper implements RowMapper<PolicyDto> {
     @Override
     public PolicyDto mapRow(ResultSet rs, int i) throws SQLException {
         String xacmlCcdId = rs.getString("consent.consent_reference_id");
-        byte[] xacmlCcd = lobHandler.getBlobAsBytes(rs, "consent.xacml_ccd");
-        logger.debug("Consent File:\n" + (new String(xacmlCcd)));
+        byte[] xacmlCcd = readXacmlCcd(rs, xacmlCcdId);
+        if (xacmlCcd != null && logger.isDebugEnabled()) {
+            logger.debug("Consent File:\n" + (new String(xacmlCcd, StandardCharsets.UTF_8)));
+        }
 
         PolicyDto policyDto = new PolicyDto();
         policyDto.setPolicy(xacmlCcd);
         policyDto.setId(xacmlCcdId);
         return policyDto;
     }
+
+    /**
+     * Reads the consent BLOB from its stream in one pass, failing as soon as it grows beyond the configured maximum
+     * consent size instead of materializing it first.
+     */
+    private byte[] readXacmlCcd(ResultSet rs, String xacmlCcdId) throws SQLException {
+        final int maxConsentSize = contextHandlerProperties.getJdbcPolicyProvider().getMaxConsentSizeInBytes();
+        try (InputStream xacmlCcd = lobHandler.getBlobAsBinaryStream(rs, "consent.xacml_ccd")) {
+            if (xacmlCcd == null) {
+                return null;
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = xacmlCcd.read(buffer)) != -1) {
+                if (out.size() + read > maxConsentSize) {
+                    throw new PolicyProviderException("Consent " + xacmlCcdId + " exceeds the maximum consent size of "
+                            + maxConsentSize + " bytes");
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new SQLException("Consent " + xacmlCcdId + " cannot be read", e);
+        }
+    }
 }
@@ -0,0 +1,40 @@
+package gov.samhsa.c2s.contexthandler.service.util;
+
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.herasaf.xacml.core.policy.impl.PolicySetType;
+import org.herasaf.xacml.core.policy.impl.PolicyType;
+
+import javax.xml.bind.JAXBElement;
+import java.util.HashSet;
+import java.util.Set;
+
+
+public class PolicyIdUtils {
+
+    /**
+     * Collects the ids of the policies in the given policy or policy set, and in the policy sets nested in it. These
+     * are the values of the {@code PolicyId} attributes of the marshalled policy, found here without marshalling it.
+     *
+     * @param evaluatable the policy or policy set
+     * @return the policy ids, empty when there are none
+     */
+    public static Set<String> collectPolicyIds(final Evaluatable evaluatable) {
+        final Set<String> policyIds = new HashSet<>();
+        collectPolicyIds(evaluatable, policyIds);
+        return policyIds;
+    }
+
+    private static void collectPolicyIds(final Object evaluatable, final Set<String> policyIds) {
+        if (evaluatable instanceof PolicyType) {
+            final PolicyType policy = (PolicyType) evaluatable;
+            if (policy.getPolicyId() != null) {
+                // The id is marshalled with its toString, see EvaluatableIdJAXBTypeAdapter
+                policyIds.add(policy.getPolicyId().toString());
+            }
+        } else if (evaluatable instanceof PolicySetType) {
+            for (final JAXBElement<?> child : ((PolicySetType) evaluatable).getAdditionalInformation()) {
+                collectPolicyIds(child.getValue(), policyIds);
+            }
+        }
+    }
+}
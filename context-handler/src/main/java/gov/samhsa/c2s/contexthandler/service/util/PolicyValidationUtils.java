@@ -1,14 +1,19 @@
 package gov.samhsa.c2s.contexthandler.service.util;
 
 import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
+import org.herasaf.xacml.core.SyntaxException;
 import org.herasaf.xacml.core.policy.Evaluatable;
 import org.herasaf.xacml.core.policy.PolicyMarshaller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.util.Assert;
-import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
 
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 
 
 public class PolicyValidationUtils {
@@ -16,17 +21,21 @@ public class PolicyValidationUtils {
     private static final Logger LOGGER = LoggerFactory
             .getLogger(PolicyValidationUtils.class);
 
+    private static final String XACML_POLICY_SCHEMA_FILE_NAME = "access_control-xacml-2.0-policy-schema-os.xsd";
+
+    // Schema instances are thread safe, so the XACML policy schema shipped with HeraSAF is compiled only once
+    private static final Schema XACML_POLICY_SCHEMA = newXacmlPolicySchema();
+
+    /**
+     * Checks that the policy can be unmarshalled, which is what makes a policy valid.
+     *
+     * @param policy the policy
+     * @return true if the policy can be unmarshalled
+     */
     public static boolean validate(final byte[] policy) {
         boolean isValid = false;
         try {
-            final String policyString = new String(policy,
-                    DOMUtils.DEFAULT_ENCODING);
-            final Document policyDoc = DOMUtils.bytesToDocument(policy);
-            final Evaluatable policyObj = PolicyMarshaller
-                    .unmarshal(new ByteArrayInputStream(policy));
-            Assert.notNull(policyString);
-            Assert.notNull(policyObj);
-            Assert.notNull(policyDoc);
+            unmarshal(policy);
             isValid = true;
         } catch (final Exception e) {
             LOGGER.debug(e.getMessage(), e);
@@ -38,4 +47,43 @@ public static PolicyDto validateAndReturn(PolicyDto policyDto) {
         policyDto.setValid(validate(policyDto.getPolicy()));
         return policyDto;
     }
+
+    /**
+     * Unmarshals the policy.
+     *
+     * @param policy the policy
+     * @return the unmarshalled policy
+     * @throws SyntaxException if the policy cannot be unmarshalled
+     */
+    public static Evaluatable unmarshal(final byte[] policy) throws SyntaxException {
+        final Evaluatable evaluatable = PolicyMarshaller.unmarshal(new ByteArrayInputStream(policy));
+        if (evaluatable == null) {
+            throw new SyntaxException("The policy cannot be unmarshalled");
+        }
+        return evaluatable;
+    }
+
+    /**
+     * Validates the policy against the XACML 2.0 policy schema shipped with HeraSAF. This is stricter than
+     * unmarshalling, which ignores for example unknown attributes.
+     *
+     * @param policy the policy
+     * @throws SyntaxException if the policy does not conform to the schema
+     */
+    public static void validateAgainstSchema(final byte[] policy) throws SyntaxException {
+        try {
+            XACML_POLICY_SCHEMA.newValidator().validate(new StreamSource(new ByteArrayInputStream(policy)));
+        } catch (final SAXException | IOException e) {
+            throw new SyntaxException("The policy is not valid: " + e.getMessage(), e);
+        }
+    }
+
+    private static Schema newXacmlPolicySchema() {
+        try {
+            return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                    .newSchema(PolicyValidationUtils.class.getClassLoader().getResource(XACML_POLICY_SCHEMA_FILE_NAME));
+        } catch (final SAXException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
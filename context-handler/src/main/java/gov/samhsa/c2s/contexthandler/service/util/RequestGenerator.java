@@ -1,10 +1,10 @@
 package gov.samhsa.c2s.contexthandler.service.util;
 
-import gov.samhsa.c2s.common.document.transformer.XmlTransformer;
 import gov.samhsa.c2s.common.log.Logger;
 import gov.samhsa.c2s.common.log.LoggerFactory;
 import gov.samhsa.c2s.common.marshaller.SimpleMarshaller;
 import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties.PdpRequest.GenerationMode;
 import gov.samhsa.c2s.contexthandler.config.FhirProperties;
 import gov.samhsa.c2s.contexthandler.service.dto.PdpAttributesDto;
 import gov.samhsa.c2s.contexthandler.service.dto.PdpRequestDto;
@@ -14,23 +14,44 @@
 import org.herasaf.xacml.core.api.PolicyRetrievalPoint;
 import org.herasaf.xacml.core.api.UnorderedPolicyRepository;
 import org.herasaf.xacml.core.context.RequestMarshaller;
+import org.herasaf.xacml.core.context.impl.ActionType;
+import org.herasaf.xacml.core.context.impl.AttributeType;
+import org.herasaf.xacml.core.context.impl.AttributeValueType;
+import org.herasaf.xacml.core.context.impl.EnvironmentType;
 import org.herasaf.xacml.core.context.impl.RequestType;
+import org.herasaf.xacml.core.context.impl.ResourceType;
 import org.herasaf.xacml.core.context.impl.ResponseType;
+import org.herasaf.xacml.core.context.impl.SubjectType;
+import org.herasaf.xacml.core.converter.DataTypeJAXBTypeAdapter;
 import org.herasaf.xacml.core.policy.Evaluatable;
 import org.herasaf.xacml.core.policy.PolicyMarshaller;
 import org.herasaf.xacml.core.simplePDP.SimplePDPFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-
+import org.springframework.util.ClassUtils;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.util.JAXBSource;
+import javax.xml.transform.Result;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.Optional;
 import java.util.function.Function;
 
 @Component
@@ -39,21 +60,37 @@ public class RequestGenerator {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final String PDPREQUESTXSLNAME = "pdpRequest.xsl";
     /**
-     * The xml transformer.
+     * pdpRequest.xsl is an XSLT 2.0 stylesheet, so it can only be run by Saxon.
      */
-    @Autowired
-    private XmlTransformer xmlTransformer;
-    @Autowired
-    private SimpleMarshaller simpleMarshaller;
+    private static final String SAXON_TRANSFORMER_FACTORY = "net.sf.saxon.TransformerFactoryImpl";
 
-    @Autowired
-    private ContextHandlerProperties contextHandlerProperties;
+    private final SimpleMarshaller simpleMarshaller;
+
+    private final ContextHandlerProperties contextHandlerProperties;
 
     private final FhirProperties fhirProperties;
 
+    /**
+     * Resolves data type URIs the same way the JAXB unmarshaller does, so directly built requests carry the same
+     * data type instances as unmarshalled ones.
+     */
+    private final DataTypeJAXBTypeAdapter dataTypeAdapter = new DataTypeJAXBTypeAdapter();
+
+    /**
+     * The compiled pdpRequest.xsl, which is thread safe and shared by all transformations.
+     */
+    private volatile Templates pdpRequestTemplates;
+
     @Autowired
-    public RequestGenerator(FhirProperties fhirProperties) {
+    public RequestGenerator(SimpleMarshaller simpleMarshaller, ContextHandlerProperties contextHandlerProperties,
+                            FhirProperties fhirProperties) {
+        this.simpleMarshaller = simpleMarshaller;
+        this.contextHandlerProperties = contextHandlerProperties;
         this.fhirProperties = fhirProperties;
+        if (contextHandlerProperties.getPdpRequest().getGenerationMode() == GenerationMode.XSL) {
+            // Fail at startup rather than on the first request if the stylesheet cannot be compiled
+            getPdpRequestTemplates();
+        }
     }
 
     Function<XacmlRequestDto, PdpRequestDto> XacmlRequestDtoToPdpRequestDto = new Function<XacmlRequestDto, PdpRequestDto>() {
@@ -101,52 +138,144 @@ public PdpRequestDto apply(XacmlRequestDto xacmlRequestDto) {
                     .attributeType(PdpAttributeIds.ACTION_ACTIONID.getAttributeType()).build());
             pdpRequestDto.setActionAttributes(actionAttributes);
 
-            //setting Environment attributes
-            List<PdpAttributesDto> envAttributes = new ArrayList<>();
-            envAttributes.add(new PdpAttributesDto().builder().attributeId(PdpAttributeIds.Environment_CURRENTDATETIME.getAttributeId())
-                    .attributeValue(getDate())
-                    .attributeType(PdpAttributeIds.Environment_CURRENTDATETIME.getAttributeType()).build());
-            pdpRequestDto.setEnvironmentAttributes(envAttributes);
-
-
             return pdpRequestDto;
         }
     };
 
     public RequestType generateRequest(XacmlRequestDto xacmlRequest) {
+        if (contextHandlerProperties.getPdpRequest().getGenerationMode() == GenerationMode.XSL) {
+            return transformRequest(xacmlRequest);
+        }
+        return buildRequest(xacmlRequest);
+    }
+
+    /**
+     * Builds the PDP request directly from the attributes of the given XACML request, without the XSL transformation
+     * and the unmarshalling of its result. The environment attributes carry the current date time in the same form as
+     * the pdpRequest.xsl transformation does.
+     *
+     * @param xacmlRequest the xacml request
+     * @return the request type
+     */
+    public RequestType buildRequest(XacmlRequestDto xacmlRequest) {
+        final PdpRequestDto pdpRequestDto = convertToPdpRequestDto(xacmlRequest, getCurrentDateTime());
+        logger.debug(() -> createPDPRequestDtoLogMessage(pdpRequestDto));
+
+        final RequestType requestType = new RequestType();
+
+        final SubjectType subject = new SubjectType();
+        pdpRequestDto.getSubjectAttributes().stream()
+                .map(this::toAttributeType)
+                .forEach(subject.getAttributes()::add);
+        requestType.getSubjects().add(subject);
+
+        final ResourceType resource = new ResourceType();
+        pdpRequestDto.getResourceAttributes().stream()
+                .map(this::toAttributeType)
+                .forEach(resource.getAttributes()::add);
+        requestType.getResources().add(resource);
+
+        final ActionType action = new ActionType();
+        pdpRequestDto.getActionAttributes().stream()
+                .map(this::toAttributeType)
+                .forEach(action.getAttributes()::add);
+        requestType.setAction(action);
+
+        final EnvironmentType environment = new EnvironmentType();
+        pdpRequestDto.getEnvironmentAttributes().stream()
+                .map(this::toAttributeType)
+                .forEach(environment.getAttributes()::add);
+        requestType.setEnvironment(environment);
+
+        return requestType;
+    }
+
+    /**
+     * Generates the PDP request by transforming the XACML request with pdpRequest.xsl and
+     * unmarshalling the result.
+     * <p>
+     * The PDP request DTO is read by the transformation straight from its JAXB object, and the result is built as a
+     * DOM that is unmarshalled by HeraSAF, so the request is never serialized to a string.
+     *
+     * @param xacmlRequest the xacml request
+     * @return the request type, or null if the transformation result cannot be unmarshalled
+     */
+    public RequestType transformRequest(XacmlRequestDto xacmlRequest) {
         RequestType requestType = null;
-        final String request = generateRequestString(xacmlRequest);
-        final InputStream is = new ByteArrayInputStream(request.getBytes());
         try {
-            requestType = unmarshalRequest(is);
+            final DOMResult result = new DOMResult();
+            transform(xacmlRequest, result);
+            requestType = RequestMarshaller.unmarshal(result.getNode());
         } catch (final SyntaxException e) {
             logger.debug(e.getMessage(), e);
+        } catch (final Exception e) {
+            logger.error(e.getMessage());
         }
         return requestType;
     }
 
     public String generateRequestString(XacmlRequestDto xacmlRequest) {
         String pdpRequest = "";
-        final ClassLoader classLoader = Thread.currentThread()
-                .getContextClassLoader();
         try {
-            PdpRequestDto pdpRequestDto = convertToPdpRequestDto(xacmlRequest);
-
-            logger.debug(() -> createPDPRequestDtoLogMessage(pdpRequestDto));
-
-            pdpRequest = xmlTransformer.transform(pdpRequestDto,
-                    classLoader.getResource(PDPREQUESTXSLNAME).toString()
-                    , Optional.empty(), Optional.empty());
-
+            final StringWriter writer = new StringWriter();
+            transform(xacmlRequest, new StreamResult(writer));
+            pdpRequest = writer.toString();
         } catch (final Exception e) {
             logger.error(e.getMessage());
         }
         return pdpRequest;
     }
 
-    private PdpRequestDto convertToPdpRequestDto(XacmlRequestDto xacmlRequestDto) {
+    private void transform(XacmlRequestDto xacmlRequest, Result result) throws JAXBException, TransformerException {
+        // pdpRequest.xsl replaces the environment attribute values with its own current-dateTime()
+        final PdpRequestDto pdpRequestDto = convertToPdpRequestDto(xacmlRequest, getDate());
+
+        logger.debug(() -> createPDPRequestDtoLogMessage(pdpRequestDto));
+
+        getPdpRequestTemplates().newTransformer()
+                .transform(new JAXBSource(JAXBUtils.getContext(PdpRequestDto.class), pdpRequestDto), result);
+    }
+
+    private Templates getPdpRequestTemplates() {
+        Templates templates = pdpRequestTemplates;
+        if (templates == null) {
+            synchronized (this) {
+                templates = pdpRequestTemplates;
+                if (templates == null) {
+                    templates = compilePdpRequestTemplates();
+                    pdpRequestTemplates = templates;
+                }
+            }
+        }
+        return templates;
+    }
+
+    private Templates compilePdpRequestTemplates() {
+        final ClassLoader classLoader = RequestGenerator.class.getClassLoader();
+        if (!ClassUtils.isPresent(SAXON_TRANSFORMER_FACTORY, classLoader)) {
+            // The JDK transformer only supports XSLT 1.0 and cannot run pdpRequest.xsl
+            throw new IllegalStateException("Saxon is required to transform the PDP requests with " + PDPREQUESTXSLNAME
+                    + ", use the " + GenerationMode.DIRECT + " generation mode instead");
+        }
+        final TransformerFactory transformerFactory = TransformerFactory.newInstance(SAXON_TRANSFORMER_FACTORY, classLoader);
+        try {
+            return transformerFactory.newTemplates(
+                    new StreamSource(classLoader.getResource(PDPREQUESTXSLNAME).toString()));
+        } catch (final TransformerConfigurationException e) {
+            throw new IllegalStateException("Unable to compile " + PDPREQUESTXSLNAME, e);
+        }
+    }
+
+    private PdpRequestDto convertToPdpRequestDto(XacmlRequestDto xacmlRequestDto, String currentDateTime) {
         PdpRequestDto pdpRequestDto = XacmlRequestDtoToPdpRequestDto.apply(xacmlRequestDto);
 
+        //setting Environment attributes
+        List<PdpAttributesDto> envAttributes = new ArrayList<>();
+        envAttributes.add(new PdpAttributesDto().builder().attributeId(PdpAttributeIds.Environment_CURRENTDATETIME.getAttributeId())
+                .attributeValue(currentDateTime)
+                .attributeType(PdpAttributeIds.Environment_CURRENTDATETIME.getAttributeType()).build());
+        pdpRequestDto.setEnvironmentAttributes(envAttributes);
+
         return pdpRequestDto;
     }
 
@@ -161,6 +290,31 @@ public String getDate() {
         return sdf.format(new Date());
     }
 
+    /**
+     * Gets the current date time in the lexical form of the XSLT 2.0 {@code current-dateTime()} function, which is a
+     * valid {@code xs:dateTime} with milliseconds and a zone offset.
+     *
+     * @return the current date time
+     */
+    String getCurrentDateTime() {
+        return OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+    }
+
+    private AttributeType toAttributeType(PdpAttributesDto attribute) {
+        return toAttributeType(attribute.getAttributeId(), attribute.getAttributeType(), attribute.getAttributeValue());
+    }
+
+    private AttributeType toAttributeType(String attributeId, String dataType, String value) {
+        final AttributeValueType attributeValue = new AttributeValueType();
+        attributeValue.getContent().add(value);
+
+        final AttributeType attribute = new AttributeType();
+        attribute.setAttributeId(attributeId);
+        attribute.setDataType(dataTypeAdapter.unmarshal(dataType));
+        attribute.getAttributeValues().add(attributeValue);
+        return attribute;
+    }
+
     /**
      * Unmarshal request.
      *
@@ -0,0 +1,84 @@
+package gov.samhsa.c2s.contexthandler.service.xacml;
+
+import org.herasaf.xacml.core.PolicyRepositoryException;
+import org.herasaf.xacml.core.api.PolicyRetrievalPoint;
+import org.herasaf.xacml.core.context.RequestCtx;
+import org.herasaf.xacml.core.context.impl.RequestType;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.herasaf.xacml.core.policy.EvaluatableID;
+import org.herasaf.xacml.core.policy.impl.PolicySetType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * A {@link PolicyRetrievalPoint} that serves the policies of the request being evaluated on the current thread.
+ * <p>
+ * The evaluatables are handed to the PDP as they are; there is no deploy/undeploy step and no state shared with
+ * other requests. A single instance backs a single PDP, which is built once because the
+ * {@link org.herasaf.xacml.core.simplePDP.SimplePDP} constructor logs and changes the JVM-wide default time zone.
+ */
+public class RequestScopedPolicyRetrievalPoint implements PolicyRetrievalPoint {
+
+    private final ThreadLocal<List<Evaluatable>> evaluatables = new ThreadLocal<>();
+
+    /**
+     * Serves the given policies to the PDP while the given evaluation runs on the current thread.
+     *
+     * @param policies   the policies of the current request
+     * @param evaluation the evaluation, which must call the PDP on the current thread
+     * @return the result of the evaluation
+     */
+    public <T> T withEvaluatables(List<Evaluatable> policies, Supplier<T> evaluation) {
+        final List<Evaluatable> previous = evaluatables.get();
+        evaluatables.set(Collections.unmodifiableList(policies));
+        try {
+            return evaluation.get();
+        } finally {
+            if (previous == null) {
+                evaluatables.remove();
+            } else {
+                evaluatables.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public Evaluatable getEvaluatable(EvaluatableID evaluatableId) {
+        return findEvaluatable(currentEvaluatables(), evaluatableId)
+                .orElseThrow(() -> new PolicyRepositoryException("No Evaluatable with ID " + evaluatableId + " found."));
+    }
+
+    @Override
+    public List<Evaluatable> getEvaluatables(RequestCtx request) {
+        return currentEvaluatables();
+    }
+
+    @Override
+    public List<Evaluatable> getEvaluatables(RequestType request) {
+        return currentEvaluatables();
+    }
+
+    private List<Evaluatable> currentEvaluatables() {
+        final List<Evaluatable> current = evaluatables.get();
+        return current != null ? current : Collections.emptyList();
+    }
+
+    private static Optional<Evaluatable> findEvaluatable(List<Evaluatable> candidates, EvaluatableID evaluatableId) {
+        for (final Evaluatable candidate : candidates) {
+            if (evaluatableId.equals(candidate.getId())) {
+                return Optional.of(candidate);
+            }
+            if (candidate instanceof PolicySetType) {
+                final Optional<Evaluatable> child = findEvaluatable(
+                        ((PolicySetType) candidate).getUnorderedEvaluatables(null), evaluatableId);
+                if (child.isPresent()) {
+                    return child;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+}
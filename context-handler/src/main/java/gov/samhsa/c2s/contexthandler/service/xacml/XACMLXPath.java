@@ -7,4 +7,24 @@ public class XACMLXPath {
 
 	private XACMLXPath() {
 	};
+
+	/**
+	 * The XPath expressions above, compiled once per thread by
+	 * {@link gov.samhsa.c2s.contexthandler.service.util.DOMUtils}.
+	 */
+	public enum Expression {
+		POLICY_SET_ID(XPATH_POLICY_SET_ID),
+		POLICY_ID(XPATH_POLICY_ID),
+		POLICY_SET_POLICY_COMBINING_ALG_ID(XPATH_POLICY_SET_POLICY_COMBINING_ALG_ID);
+
+		private final String xPathExpr;
+
+		Expression(String xPathExpr) {
+			this.xPathExpr = xPathExpr;
+		}
+
+		public String getXPathExpr() {
+			return xPathExpr;
+		}
+	}
 }
@@ -1,16 +1,22 @@
 package gov.samhsa.c2s.contexthandler.web;
 
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
 import gov.samhsa.c2s.contexthandler.service.ContextHandlerService;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlBatchRequestDto;
 import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
 import gov.samhsa.c2s.contexthandler.service.dto.XacmlResponseDto;
-import gov.samhsa.c2s.contexthandler.service.exception.C2SAuditException;
+import gov.samhsa.c2s.contexthandler.service.exception.PolicyEnforcementUnavailableException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.validation.Valid;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 public class ContextHandlerRestController {
@@ -18,14 +24,40 @@ public class ContextHandlerRestController {
     @Autowired
     private ContextHandlerService contextHandlerService;
 
+    @Autowired
+    private ContextHandlerProperties contextHandlerProperties;
+
     @RequestMapping("/")
     public String index() {
         return "Welcome to Context Handler Service";
     }
 
     @RequestMapping(value = "/policyEnforcement", method = RequestMethod.POST)
-    public XacmlResponseDto access(@Valid @RequestBody XacmlRequestDto xacmlRequest) throws C2SAuditException {
-        return contextHandlerService.enforcePolicy(xacmlRequest);
+    public DeferredResult<XacmlResponseDto> access(@Valid @RequestBody XacmlRequestDto xacmlRequest) {
+        return toDeferredResult(contextHandlerService.enforcePolicyAsync(xacmlRequest));
+    }
+
+    @RequestMapping(value = "/policyEnforcement/batch", method = RequestMethod.POST)
+    public DeferredResult<List<XacmlResponseDto>> accessBatch(@Valid @RequestBody XacmlBatchRequestDto xacmlBatchRequest) {
+        return toDeferredResult(contextHandlerService.enforcePoliciesAsync(xacmlBatchRequest.getRequests()));
+    }
+
+    private <T> DeferredResult<T> toDeferredResult(CompletableFuture<T> future) {
+        final long timeoutInMs = contextHandlerProperties.getAsync().getTimeoutInMs();
+        final DeferredResult<T> deferredResult = new DeferredResult<>(timeoutInMs);
+        deferredResult.onTimeout(() -> deferredResult.setErrorResult(new PolicyEnforcementUnavailableException(
+                "Policy enforcement did not complete within " + timeoutInMs + " ms")));
+        future.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                deferredResult.setResult(result);
+            } else {
+                // Hand the original exception to the exception resolvers, so that its @ResponseStatus applies
+                deferredResult.setErrorResult(throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause()
+                        : throwable);
+            }
+        });
+        return deferredResult;
     }
 
 }
@@ -356,4 +356,98 @@ public void testContextHandlerService_Throws_PolicyProviderException() {
         // Act
         final XacmlResponseDto xacmlResponseDto = contextHandlerService.enforcePolicy(xacmlRequest);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testContextHandlerService_Batch_Responses_In_Request_Order_With_Failures_Denied() {
+        // Arrange
+        final XacmlRequestDto permitRequest = XacmlRequestDto.builder()
+                .recipientNpi(RECIPIENT_NPI_4444444444)
+                .intermediaryNpi(INTERMEDIARY_NPI_1111111111)
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root(PATIENT_ID_ROOT).extension(PATIENT_ID_EXTENSION).build())
+                .build();
+        final XacmlRequestDto noPolicyFoundRequest = XacmlRequestDto.builder()
+                .recipientNpi(RECIPIENT_NPI_4444444444)
+                .intermediaryNpi(INTERMEDIARY_NPI_1111111111)
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root(PATIENT_ID_ROOT).extension(INVALID_VALUE).build())
+                .build();
+        final XacmlRequestDto policyProviderErrorRequest = XacmlRequestDto.builder()
+                .recipientNpi(RECIPIENT_NPI_6666666666)
+                .intermediaryNpi(INTERMEDIARY_NPI_3333333333)
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root(UNHANDLED_ERROR_PATIENT_ID_ROOT).extension(UNHANDLED_ERROR_PATIENT_ID_EXTENSION).build())
+                .build();
+        final XacmlRequestDto secondPermitRequest = XacmlRequestDto.builder()
+                .recipientNpi(RECIPIENT_NPI_4444444444)
+                .intermediaryNpi(INTERMEDIARY_NPI_1111111111)
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root(PATIENT_ID_ROOT).extension(PATIENT_ID_EXTENSION).build())
+                .build();
+
+        // Act
+        final List<XacmlResponseDto> xacmlResponses = contextHandlerService.enforcePolicies(
+                Arrays.asList(permitRequest, noPolicyFoundRequest, policyProviderErrorRequest, secondPermitRequest));
+
+        // Assert
+        assertEquals("Number of responses doesn't match", 4, xacmlResponses.size());
+        assertEquals("Decision doesn't match", PERMIT, xacmlResponses.get(0).getPdpDecision());
+        assertEquals("Decision doesn't match", DENY, xacmlResponses.get(1).getPdpDecision());
+        assertEquals("Decision doesn't match", DENY, xacmlResponses.get(2).getPdpDecision());
+        assertEquals("Decision doesn't match", PERMIT, xacmlResponses.get(3).getPdpDecision());
+        assertTrue("xacmlResponse has extra obligations that it is not supposed to have", PERMIT_OBLIGATIONS.containsAll(xacmlResponses.get(3).getPdpObligations()));
+    }
+
+    @Test
+    public void testContextHandlerService_Async_Batch_Responses_In_Request_Order() {
+        // Arrange
+        final XacmlRequestDto permitRequest = XacmlRequestDto.builder()
+                .recipientNpi(RECIPIENT_NPI_4444444444)
+                .intermediaryNpi(INTERMEDIARY_NPI_1111111111)
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root(PATIENT_ID_ROOT).extension(PATIENT_ID_EXTENSION).build())
+                .build();
+        final XacmlRequestDto noPolicyFoundRequest = XacmlRequestDto.builder()
+                .recipientNpi(RECIPIENT_NPI_4444444444)
+                .intermediaryNpi(INTERMEDIARY_NPI_1111111111)
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root(PATIENT_ID_ROOT).extension(INVALID_VALUE).build())
+                .build();
+
+        // Act
+        final List<XacmlResponseDto> xacmlResponses = contextHandlerService.enforcePoliciesAsync(
+                Arrays.asList(noPolicyFoundRequest, permitRequest)).join();
+
+        // Assert
+        assertEquals("Number of responses doesn't match", 2, xacmlResponses.size());
+        assertEquals("Decision doesn't match", DENY, xacmlResponses.get(0).getPdpDecision());
+        assertEquals("Decision doesn't match", PERMIT, xacmlResponses.get(1).getPdpDecision());
+    }
+
+    @Test
+    public void testContextHandlerService_Async_Permit_And_No_Policy_Found_Denied() {
+        // Arrange
+        final XacmlRequestDto permitRequest = XacmlRequestDto.builder()
+                .recipientNpi(RECIPIENT_NPI_4444444444)
+                .intermediaryNpi(INTERMEDIARY_NPI_1111111111)
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root(PATIENT_ID_ROOT).extension(PATIENT_ID_EXTENSION).build())
+                .build();
+        final XacmlRequestDto noPolicyFoundRequest = XacmlRequestDto.builder()
+                .recipientNpi(RECIPIENT_NPI_4444444444)
+                .intermediaryNpi(INTERMEDIARY_NPI_1111111111)
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root(PATIENT_ID_ROOT).extension(INVALID_VALUE).build())
+                .build();
+
+        // Act
+        final XacmlResponseDto permitResponse = contextHandlerService.enforcePolicyAsync(permitRequest).join();
+        final XacmlResponseDto noPolicyFoundResponse = contextHandlerService.enforcePolicyAsync(noPolicyFoundRequest).join();
+
+        // Assert
+        assertEquals("Decision doesn't match", PERMIT, permitResponse.getPdpDecision());
+        assertTrue("xacmlResponse has extra obligations that it is not supposed to have", PERMIT_OBLIGATIONS.containsAll(permitResponse.getPdpObligations()));
+        assertTrue("xacmlResponse is missing obligations that it is supposed to have", permitResponse.getPdpObligations().containsAll(PERMIT_OBLIGATIONS));
+        assertEquals("Decision doesn't match", DENY, noPolicyFoundResponse.getPdpDecision());
+    }
+}
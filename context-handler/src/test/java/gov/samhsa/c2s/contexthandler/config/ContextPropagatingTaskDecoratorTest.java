@@ -0,0 +1,44 @@
+package gov.samhsa.c2s.contexthandler.config;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ContextPropagatingTaskDecoratorTest {
+    private static final String MDC_KEY = "X-B3-TraceId";
+
+    private final ContextPropagatingTaskDecorator taskDecorator = new ContextPropagatingTaskDecorator(Optional.empty());
+
+    @After
+    public void tearDown() {
+        MDC.clear();
+    }
+
+    @Test
+    public void testDecorate_Runs_Task_With_MDC_Of_Submitting_Thread() throws Exception {
+        // Arrange
+        final AtomicReference<String> valueInTask = new AtomicReference<>();
+        final AtomicReference<String> valueAfterTask = new AtomicReference<>();
+        MDC.put(MDC_KEY, "submitted");
+        final Runnable decorated = taskDecorator.decorate(() -> valueInTask.set(MDC.get(MDC_KEY)));
+        MDC.clear();
+
+        // Act
+        final Thread worker = new Thread(() -> {
+            decorated.run();
+            valueAfterTask.set(MDC.get(MDC_KEY));
+        });
+        worker.start();
+        worker.join();
+
+        // Assert
+        assertEquals("MDC value in task doesn't match", "submitted", valueInTask.get());
+        assertNull("MDC of the worker must be restored after the task", valueAfterTask.get());
+    }
+}
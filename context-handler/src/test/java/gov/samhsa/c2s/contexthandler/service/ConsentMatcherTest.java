@@ -0,0 +1,198 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import gov.samhsa.c2s.common.consentgen.ConsentBuilder;
+import gov.samhsa.c2s.contexthandler.service.dto.PatientIdDto;
+import gov.samhsa.c2s.contexthandler.service.dto.SubjectPurposeOfUse;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
+import gov.samhsa.c2s.contexthandler.service.exception.FhirConsentInvalidException;
+import org.hl7.fhir.dstu3.model.CodeableConcept;
+import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.Consent;
+import org.hl7.fhir.dstu3.model.DomainResource;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConsentMatcherTest {
+    private static final String RECIPIENT_NPI = "1111111111";
+    private static final String INTERMEDIARY_NPI = "2222222222";
+    private static final String OTHER_NPI = "3333333333";
+    private static final String RECIPIENT_ROLE_CODE = "IRCP";
+    private static final String INTERMEDIARY_ROLE_CODE = "INF";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final ConsentBuilder consentBuilder = mock(ConsentBuilder.class);
+    private final ConsentMatcher consentMatcher = new ConsentMatcher(consentBuilder, XacmlRequestDto.builder()
+            .recipientNpi(RECIPIENT_NPI)
+            .intermediaryNpi(INTERMEDIARY_NPI)
+            .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+            .patientId(PatientIdDto.builder().root("1.1.1").extension("MRN").build())
+            .build());
+
+    @Before
+    public void setUp() throws Exception {
+        // The NPI of a test provider is the name of the provider
+        when(consentBuilder.extractNpiFromFhirProviderResource(any(DomainResource.class))).thenAnswer(invocation -> {
+            final DomainResource provider = (DomainResource) invocation.getArguments()[0];
+            return provider instanceof Practitioner
+                    ? ((Practitioner) provider).getNameFirstRep().getFamily()
+                    : ((Organization) provider).getName();
+        });
+    }
+
+    @Test
+    public void testMatches_Recipient_Intermediary_And_Purpose_Of_Use_Match() {
+        // Arrange
+        final Consent consent = consent(practitioner("Practitioner/recipient", RECIPIENT_NPI),
+                organization("Organization/intermediary", INTERMEDIARY_NPI));
+
+        // Act
+        final boolean matches = consentMatcher.matches(consent);
+
+        // Assert
+        assertTrue("Consent must match", matches);
+    }
+
+    @Test
+    public void testMatches_Recipient_Mismatch_Skips_Intermediary() throws Exception {
+        // Arrange
+        final Organization intermediary = organization("Organization/intermediary", INTERMEDIARY_NPI);
+        final Consent consent = consent(practitioner("Practitioner/other", OTHER_NPI), intermediary);
+
+        // Act
+        final boolean matches = consentMatcher.matches(consent);
+
+        // Assert
+        assertFalse("Consent must not match", matches);
+        verify(consentBuilder, never()).extractNpiFromFhirProviderResource(intermediary);
+    }
+
+    @Test
+    public void testMatches_Purpose_Of_Use_Mismatch_Does_Not_Match() {
+        // Arrange
+        final Consent consent = consent(practitioner("Practitioner/recipient", RECIPIENT_NPI),
+                organization("Organization/intermediary", INTERMEDIARY_NPI));
+        consent.getPurposeFirstRep().setCode(SubjectPurposeOfUse.RESEARCH.getPurposeFhir());
+
+        // Act
+        final boolean matches = consentMatcher.matches(consent);
+
+        // Assert
+        assertFalse("Consent must not match", matches);
+    }
+
+    @Test
+    public void testMatches_Throws_FhirConsentInvalidException_Without_Recipient_Actor() {
+        // Arrange
+        thrown.expect(FhirConsentInvalidException.class);
+        thrown.expectMessage("does not have any TO provider(s) specified");
+        final Consent consent = new Consent();
+        addActor(consent, INTERMEDIARY_ROLE_CODE, organization("Organization/intermediary", INTERMEDIARY_NPI));
+
+        // Act
+        consentMatcher.matches(consent);
+    }
+
+    @Test
+    public void testMatches_Throws_FhirConsentInvalidException_Without_Actor() {
+        // Arrange
+        thrown.expect(FhirConsentInvalidException.class);
+        thrown.expectMessage("does not have any actor(s) specified");
+
+        // Act
+        consentMatcher.matches(new Consent());
+    }
+
+    @Test
+    public void testMatches_Memoizes_Npi_By_Provider_Instance() throws Exception {
+        // Arrange
+        final Practitioner recipient = practitioner(null, RECIPIENT_NPI);
+        final Organization intermediary = organization(null, INTERMEDIARY_NPI);
+
+        // Act
+        consentMatcher.matches(consent(recipient, intermediary));
+        consentMatcher.matches(consent(recipient, intermediary));
+
+        // Assert
+        verify(consentBuilder, times(1)).extractNpiFromFhirProviderResource(recipient);
+        verify(consentBuilder, times(1)).extractNpiFromFhirProviderResource(intermediary);
+    }
+
+    @Test
+    public void testMatches_Memoizes_Npi_By_Server_Assigned_Id() throws Exception {
+        // Arrange
+        final Practitioner recipient = practitioner("Practitioner/recipient", RECIPIENT_NPI);
+        final Practitioner sameRecipientOtherInstance = practitioner("Practitioner/recipient", RECIPIENT_NPI);
+        final Organization intermediary = organization("Organization/intermediary", INTERMEDIARY_NPI);
+
+        // Act
+        consentMatcher.matches(consent(recipient, intermediary));
+        consentMatcher.matches(consent(sameRecipientOtherInstance, intermediary));
+
+        // Assert
+        verify(consentBuilder, times(1)).extractNpiFromFhirProviderResource(recipient);
+        verify(consentBuilder, never()).extractNpiFromFhirProviderResource(sameRecipientOtherInstance);
+    }
+
+    @Test
+    public void testMatches_Does_Not_Share_Npi_Of_Contained_Providers_With_Same_Local_Id() throws Exception {
+        // Arrange
+        final Practitioner otherRecipient = practitioner("#recipient", OTHER_NPI);
+        final Practitioner recipient = practitioner("#recipient", RECIPIENT_NPI);
+        final Organization intermediary = organization("#intermediary", INTERMEDIARY_NPI);
+
+        // Act
+        final boolean otherRecipientMatches = consentMatcher.matches(consent(otherRecipient, intermediary));
+        final boolean recipientMatches = consentMatcher.matches(consent(recipient, intermediary));
+
+        // Assert
+        assertFalse("Consent of the other recipient must not match", otherRecipientMatches);
+        assertTrue("Consent of the recipient must match", recipientMatches);
+        verify(consentBuilder, times(1)).extractNpiFromFhirProviderResource(recipient);
+    }
+
+    private static Consent consent(Practitioner recipient, Organization intermediary) {
+        final Consent consent = new Consent();
+        addActor(consent, RECIPIENT_ROLE_CODE, recipient);
+        addActor(consent, INTERMEDIARY_ROLE_CODE, intermediary);
+        consent.addPurpose(new Coding().setCode(SubjectPurposeOfUse.HEALTHCARE_TREATMENT.getPurposeFhir()));
+        return consent;
+    }
+
+    private static void addActor(Consent consent, String roleCode, DomainResource provider) {
+        final Reference reference = new Reference();
+        reference.setResource(provider);
+        consent.addActor()
+                .setRole(new CodeableConcept().addCoding(new Coding().setCode(roleCode)))
+                .setReference(reference);
+    }
+
+    private static Practitioner practitioner(String id, String npi) {
+        final Practitioner practitioner = new Practitioner();
+        practitioner.setId(id);
+        practitioner.addName().setFamily(npi);
+        return practitioner;
+    }
+
+    private static Organization organization(String id, String npi) {
+        final Organization organization = new Organization();
+        organization.setId(id);
+        organization.setName(npi);
+        return organization;
+    }
+}
@@ -0,0 +1,141 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.hl7.fhir.dstu3.model.Consent;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ConsentPolicyCacheTest {
+
+    private final ConsentPolicyCache consentPolicyCache = new ConsentPolicyCache(new ContextHandlerProperties());
+    private final AtomicInteger conversions = new AtomicInteger();
+    private final Supplier<Evaluatable> policySupplier = () -> {
+        conversions.incrementAndGet();
+        return mock(Evaluatable.class);
+    };
+
+    @Test
+    public void testGet_Same_Versions_Hit() {
+        // Arrange
+        final Patient patient = patient("1");
+        final Practitioner actor = practitioner("1");
+
+        // Act
+        final Evaluatable first = consentPolicyCache.get(consent("1", actor), patient, policySupplier);
+        final Evaluatable second = consentPolicyCache.get(consent("1", actor), patient, policySupplier);
+
+        // Assert
+        assertSame("Cached policy doesn't match", first, second);
+        assertEquals("Number of conversions doesn't match", 1, conversions.get());
+    }
+
+    @Test
+    public void testGet_Consent_Version_Bump_Misses() {
+        // Arrange
+        final Patient patient = patient("1");
+        final Practitioner actor = practitioner("1");
+
+        // Act
+        consentPolicyCache.get(consent("1", actor), patient, policySupplier);
+        consentPolicyCache.get(consent("2", actor), patient, policySupplier);
+
+        // Assert
+        assertEquals("Number of conversions doesn't match", 2, conversions.get());
+    }
+
+    @Test
+    public void testGet_Patient_Version_Bump_Misses() {
+        // Arrange
+        final Practitioner actor = practitioner("1");
+
+        // Act
+        consentPolicyCache.get(consent("1", actor), patient("1"), policySupplier);
+        consentPolicyCache.get(consent("1", actor), patient("2"), policySupplier);
+
+        // Assert
+        assertEquals("Number of conversions doesn't match", 2, conversions.get());
+    }
+
+    @Test
+    public void testGet_Actor_Version_Bump_Misses() {
+        // Arrange
+        final Patient patient = patient("1");
+
+        // Act
+        consentPolicyCache.get(consent("1", practitioner("1")), patient, policySupplier);
+        consentPolicyCache.get(consent("1", practitioner("2")), patient, policySupplier);
+
+        // Assert
+        assertEquals("Number of conversions doesn't match", 2, conversions.get());
+    }
+
+    @Test
+    public void testGet_Missing_Version_Id_Bypasses_Cache() {
+        // Arrange
+        final Consent unversionedConsent = new Consent();
+        unversionedConsent.setId("Consent/consent");
+        final Patient patient = patient("1");
+
+        // Act
+        consentPolicyCache.get(unversionedConsent, patient, policySupplier);
+        consentPolicyCache.get(unversionedConsent, patient, policySupplier);
+
+        // Assert
+        assertFalse("Key must be absent", ConsentPolicyCache.Key.of(unversionedConsent, patient).isPresent());
+        assertEquals("Number of conversions doesn't match", 2, conversions.get());
+    }
+
+    @Test
+    public void testKey_Unresolved_Actor_Is_Absent_And_Contained_Actor_Is_Present() {
+        // Arrange
+        final Consent consentWithUnresolvedActor = consent("1", null);
+        consentWithUnresolvedActor.getActorFirstRep().setReference(new Reference("Practitioner/practitioner"));
+        final Consent consentWithContainedActor = consent("1", null);
+        consentWithContainedActor.getActorFirstRep().setReference(new Reference("#practitioner"));
+
+        // Act
+        final boolean unresolvedActorKeyPresent =
+                ConsentPolicyCache.Key.of(consentWithUnresolvedActor, patient("1")).isPresent();
+        final boolean containedActorKeyPresent =
+                ConsentPolicyCache.Key.of(consentWithContainedActor, patient("1")).isPresent();
+
+        // Assert
+        assertFalse("Key of a consent with an unresolved actor must be absent", unresolvedActorKeyPresent);
+        assertTrue("Key of a consent with a contained actor must be present", containedActorKeyPresent);
+    }
+
+    private static Consent consent(String versionId, Practitioner actor) {
+        final Consent consent = new Consent();
+        consent.setId("Consent/consent/_history/" + versionId);
+        if (actor != null) {
+            final Reference reference = new Reference(actor.getIdElement().toUnqualifiedVersionless());
+            reference.setResource(actor);
+            consent.addActor().setReference(reference);
+        }
+        return consent;
+    }
+
+    private static Patient patient(String versionId) {
+        final Patient patient = new Patient();
+        patient.setId("Patient/patient/_history/" + versionId);
+        return patient;
+    }
+
+    private static Practitioner practitioner(String versionId) {
+        final Practitioner practitioner = new Practitioner();
+        practitioner.setId("Practitioner/practitioner/_history/" + versionId);
+        return practitioner;
+    }
+}
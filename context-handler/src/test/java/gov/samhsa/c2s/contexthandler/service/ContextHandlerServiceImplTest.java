@@ -0,0 +1,116 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.service.dto.PatientIdDto;
+import gov.samhsa.c2s.contexthandler.service.dto.SubjectPurposeOfUse;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlResponseDto;
+import gov.samhsa.c2s.contexthandler.service.exception.PolicyEnforcementUnavailableException;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ContextHandlerServiceImplTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final PolicyDecisionPointService policyDecisionPointService = mock(PolicyDecisionPointService.class);
+    private final ContextHandlerServiceImpl contextHandlerService = new ContextHandlerServiceImpl();
+
+    @Before
+    public void setUp() {
+        // Behaves like a saturated executor with the abort policy
+        final Executor saturatedExecutor = runnable -> {
+            throw new RejectedExecutionException("saturated");
+        };
+        ReflectionTestUtils.setField(contextHandlerService, "policyDesicionPointService", policyDecisionPointService);
+        ReflectionTestUtils.setField(contextHandlerService, "contextHandlerProperties", new ContextHandlerProperties());
+        ReflectionTestUtils.setField(contextHandlerService, "policyRetrievalExecutor", saturatedExecutor);
+        ReflectionTestUtils.setField(contextHandlerService, "policyEvaluationExecutor", saturatedExecutor);
+    }
+
+    @Test
+    public void testEnforcePolicyAsync_Saturated_Executor_Fails_With_Unavailable() {
+        // Arrange
+        thrown.expect(CompletionException.class);
+        thrown.expectCause(instanceOf(PolicyEnforcementUnavailableException.class));
+
+        // Act
+        contextHandlerService.enforcePolicyAsync(xacmlRequest()).join();
+    }
+
+    @Test
+    public void testEnforcePoliciesAsync_Saturated_Executor_Fails_Batch_With_Unavailable() {
+        // Arrange
+        thrown.expect(CompletionException.class);
+        thrown.expectCause(instanceOf(PolicyEnforcementUnavailableException.class));
+
+        // Act
+        contextHandlerService.enforcePoliciesAsync(Arrays.asList(xacmlRequest(), xacmlRequest())).join();
+    }
+
+    @Test
+    public void testEnforcePoliciesAsync_Retrieves_On_Retrieval_Executor_And_Evaluates_On_Evaluation_Executor()
+            throws Exception {
+        // Arrange
+        final AtomicInteger retrievals = new AtomicInteger();
+        final AtomicInteger evaluations = new AtomicInteger();
+        ReflectionTestUtils.setField(contextHandlerService, "policyRetrievalExecutor", countingExecutor(retrievals));
+        ReflectionTestUtils.setField(contextHandlerService, "policyEvaluationExecutor", countingExecutor(evaluations));
+        final XacmlRequestDto otherRecipientRequest = xacmlRequest();
+        otherRecipientRequest.setRecipientNpi("3333333333");
+        final XacmlResponseDto xacmlResponse = XacmlResponseDto.builder().pdpDecision("PERMIT")
+                .pdpObligations(Collections.emptyList()).build();
+        when(policyDecisionPointService.getPolicies(any(XacmlRequestDto.class))).thenReturn(Collections.emptyList());
+        when(policyDecisionPointService.evaluateRequest(any(XacmlRequestDto.class), anyListOf(Evaluatable.class)))
+                .thenReturn(xacmlResponse);
+
+        // Act
+        final List<XacmlResponseDto> xacmlResponses = contextHandlerService
+                .enforcePoliciesAsync(Arrays.asList(xacmlRequest(), xacmlRequest(), otherRecipientRequest)).join();
+
+        // Assert
+        assertEquals("Responses don't match", Arrays.asList(xacmlResponse, xacmlResponse, xacmlResponse),
+                xacmlResponses);
+        assertEquals("Number of retrievals doesn't match", 2, retrievals.get());
+        assertEquals("Number of evaluations doesn't match", 3, evaluations.get());
+    }
+
+    /**
+     * Runs the tasks on the calling thread and counts them.
+     */
+    private static Executor countingExecutor(AtomicInteger count) {
+        return runnable -> {
+            count.incrementAndGet();
+            runnable.run();
+        };
+    }
+
+    private static XacmlRequestDto xacmlRequest() {
+        return XacmlRequestDto.builder()
+                .recipientNpi("1111111111")
+                .intermediaryNpi("2222222222")
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root("1.1.1").extension("MRN").build())
+                .build();
+    }
+}
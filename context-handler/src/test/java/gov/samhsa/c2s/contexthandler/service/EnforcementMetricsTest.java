@@ -0,0 +1,41 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EnforcementMetricsTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final EnforcementMetrics enforcementMetrics = new EnforcementMetrics(metricRegistry);
+
+    @Test
+    public void testTime_Records_Sub_Millisecond_Duration_In_Nanoseconds() {
+        // Act
+        final String result = enforcementMetrics.time("stage", () -> "result");
+
+        // Assert
+        final Timer timer = metricRegistry.timer("timer.enforcement.stage");
+        assertEquals("Result doesn't match", "result", result);
+        assertEquals("Number of recorded durations doesn't match", 1, timer.getCount());
+        assertTrue("Duration must be recorded below the millisecond",
+                timer.getSnapshot().getMax() > 0 && timer.getSnapshot().getMax() < TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testRecordDecision_Counts_Decision_And_Obligations() {
+        // Act
+        enforcementMetrics.recordDecision("PERMIT", 3);
+
+        // Assert
+        assertEquals("Decision count doesn't match", 1,
+                metricRegistry.counter("counter.enforcement.decision.permit").getCount());
+        assertEquals("Obligation count doesn't match", 3,
+                metricRegistry.histogram("histogram.enforcement.obligations").getSnapshot().getMax());
+    }
+}
@@ -0,0 +1,464 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.IRead;
+import ca.uhn.fhir.rest.gclient.IReadExecutable;
+import ca.uhn.fhir.rest.gclient.IReadTyped;
+import ca.uhn.fhir.rest.gclient.IUntypedQuery;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.codahale.metrics.MetricRegistry;
+import gov.samhsa.c2s.common.consentgen.ConsentBuilder;
+import gov.samhsa.c2s.common.consentgen.ConsentDto;
+import gov.samhsa.c2s.common.consentgen.ConsentGenException;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.config.FhirProperties;
+import gov.samhsa.c2s.contexthandler.service.dto.ConsentListAndPatientDto;
+import gov.samhsa.c2s.contexthandler.service.dto.PatientIdDto;
+import gov.samhsa.c2s.contexthandler.service.dto.SubjectPurposeOfUse;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
+import gov.samhsa.c2s.contexthandler.service.exception.MultiplePatientsFound;
+import gov.samhsa.c2s.contexthandler.service.exception.NoConsentFoundException;
+import gov.samhsa.c2s.contexthandler.service.exception.PatientNotFound;
+import gov.samhsa.c2s.contexthandler.service.exception.PolicyProviderException;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.herasaf.xacml.core.simplePDP.initializers.InitializerExecutor;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.CodeableConcept;
+import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.Consent;
+import org.hl7.fhir.dstu3.model.DomainResource;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class FhirServerPolicyProviderImplTest {
+    private static final String FHIR_CONSENT_TO_CONSENT_DTO_METRIC = "timer.policy-provider.fhir.consent-dto-conversion";
+    private static final String MRN_SYSTEM = "1.3.6.1.4.1.21367.13.20.200";
+    private static final String MRN = "MRN";
+    private static final String RECIPIENT_NPI = "1111111111";
+    private static final String INTERMEDIARY_NPI = "2222222222";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final ConsentBuilder consentBuilder = mock(ConsentBuilder.class);
+    private final ExecutorService policyEvaluationExecutor = Executors.newFixedThreadPool(3);
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final ContextHandlerProperties contextHandlerProperties = new ContextHandlerProperties();
+    private final FhirServerPolicyProviderImpl fhirServerPolicyProvider = new FhirServerPolicyProviderImpl(
+            consentBuilder, mock(XacmlPolicySetService.class), policyEvaluationExecutor, metricRegistry,
+            new ConsentPolicyCache(contextHandlerProperties), new PolicyValidator(contextHandlerProperties));
+    private final Patient patient = new Patient();
+    private final FhirProperties fhirProperties = new FhirProperties();
+    private final FhirPatientIdCache fhirPatientIdCache = new FhirPatientIdCache(fhirProperties);
+    private final IGenericClient fhirClient = mock(IGenericClient.class);
+    private final IQuery<?> query = fluentMock(IQuery.class, IUntypedQuery.class);
+    private final IRead read = fluentMock(IRead.class, IReadTyped.class, IReadExecutable.class);
+
+    @BeforeClass
+    public static void runInitializers() {
+        InitializerExecutor.runInitializers();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ReflectionTestUtils.setField(fhirServerPolicyProvider, "fhirClient", fhirClient);
+        ReflectionTestUtils.setField(fhirServerPolicyProvider, "fhirProperties", fhirProperties);
+        ReflectionTestUtils.setField(fhirServerPolicyProvider, "fhirPatientIdCache", fhirPatientIdCache);
+        doReturn(query).when(fhirClient).search();
+        doReturn(read).when(fhirClient).read();
+        when(consentBuilder.extractNpiFromFhirProviderResource(any(DomainResource.class))).thenAnswer(invocation ->
+                ((DomainResource) invocation.getArguments()[0]).getIdElement().getIdPart());
+    }
+
+    @After
+    public void tearDown() {
+        policyEvaluationExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testConvertFhirConsentListToXacmlPolicies_Keeps_Consent_Order() throws Exception {
+        // Arrange
+        final List<Consent> consents = Arrays.asList(consent("first"), consent("second"), consent("third"));
+        // Stubbed up front, as Mockito does not support stubbing while other threads use the mock
+        final Map<String, ConsentDto> consentDtos = new HashMap<>();
+        for (String consentId : Arrays.asList("first", "second", "third")) {
+            consentDtos.put(consentId, consentDto(consentId));
+        }
+        final CountDownLatch laterConsentsConverted = new CountDownLatch(2);
+        when(consentBuilder.buildFhirConsent2ConsentDto(any(Consent.class), any(Patient.class))).thenAnswer(invocation -> {
+            final String consentId = ((Consent) invocation.getArguments()[0]).getIdElement().getIdPart();
+            if ("first".equals(consentId)) {
+                // Completes last, after the other conversions
+                assertTrue("Other conversions did not complete", laterConsentsConverted.await(10, TimeUnit.SECONDS));
+            } else {
+                laterConsentsConverted.countDown();
+            }
+            return consentDtos.get(consentId);
+        });
+
+        // Act
+        final List<Evaluatable> policies = fhirServerPolicyProvider.convertFhirConsentListToXacmlPolicies(consents, patient);
+
+        // Assert
+        assertEquals("Policy order doesn't match", Arrays.asList("first", "second", "third"),
+                policies.stream().map(policy -> policy.getId().toString()).collect(Collectors.toList()));
+        assertEquals("Number of timed conversions doesn't match", 3,
+                metricRegistry.timer(FHIR_CONSENT_TO_CONSENT_DTO_METRIC).getCount());
+    }
+
+    @Test
+    public void testConvertFhirConsentListToXacmlPolicies_ConsentGenException_Throws_PolicyProviderException() throws Exception {
+        // Arrange
+        thrown.expect(PolicyProviderException.class);
+        thrown.expectCause(instanceOf(ConsentGenException.class));
+        final List<Consent> consents = Arrays.asList(consent("first"), consent("second"));
+        final ConsentDto firstConsentDto = consentDto("first");
+        final ConsentDto secondConsentDto = consentDto("second");
+        when(consentBuilder.buildFhirConsent2ConsentDto(consents.get(0), patient)).thenReturn(firstConsentDto);
+        when(consentBuilder.buildFhirConsent2ConsentDto(consents.get(1), patient)).thenReturn(secondConsentDto);
+        when(consentBuilder.buildConsent2Xacml(secondConsentDto)).thenThrow(ConsentGenException.class);
+
+        // Act
+        fhirServerPolicyProvider.convertFhirConsentListToXacmlPolicies(consents, patient);
+    }
+
+    @Test
+    public void testConvertFhirConsentListToXacmlPolicies_Saturated_Executor_Converts_On_Calling_Thread() throws Exception {
+        // Arrange
+        final List<String> consentIds = Arrays.asList("first", "second", "third", "fourth");
+        final List<Consent> consents = consentIds.stream()
+                .map(FhirServerPolicyProviderImplTest::consent)
+                .collect(Collectors.toList());
+        for (Consent consent : consents) {
+            final ConsentDto consentDto = consentDto(consent.getIdElement().getIdPart());
+            when(consentBuilder.buildFhirConsent2ConsentDto(consent, patient)).thenReturn(consentDto);
+        }
+        // One busy thread and a queue with a single slot, which holds the second conversion
+        final CountDownLatch release = new CountDownLatch(1);
+        final ThreadPoolExecutor saturatedExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.AbortPolicy());
+        saturatedExecutor.execute(() -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        final FhirServerPolicyProviderImpl saturatedFhirServerPolicyProvider = new FhirServerPolicyProviderImpl(
+                consentBuilder, mock(XacmlPolicySetService.class), saturatedExecutor, metricRegistry,
+                new ConsentPolicyCache(contextHandlerProperties), new PolicyValidator(contextHandlerProperties));
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+
+        try {
+            // Act
+            final Future<List<Evaluatable>> policies = caller.submit(() -> saturatedFhirServerPolicyProvider
+                    .convertFhirConsentListToXacmlPolicies(consents, patient));
+            // The queued conversion only runs once the busy thread is released
+            while (metricRegistry.timer(FHIR_CONSENT_TO_CONSENT_DTO_METRIC).getCount() < consents.size() - 1
+                    && !policies.isDone()) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            // Assert
+            assertEquals("Policy ids don't match", consentIds, policies.get(10, TimeUnit.SECONDS).stream()
+                    .map(policy -> policy.getId().toString())
+                    .collect(Collectors.toList()));
+        } finally {
+            release.countDown();
+            caller.shutdownNow();
+            saturatedExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSearchForFhirPatientAndFhirConsent_Combined_Finds_Consents_And_Included_Patient_In_One_Search() {
+        // Arrange
+        fhirProperties.setSearchMode(FhirProperties.SearchMode.COMBINED);
+        final Patient includedPatient = fhirPatient("patient");
+        final Consent matchingConsent = matchingConsent("consent", includedPatient);
+        doReturn(searchResult(Collections.singletonList(matchingConsent), includedPatient)).when(query).execute();
+
+        // Act
+        final ConsentListAndPatientDto consentListAndPatient =
+                fhirServerPolicyProvider.searchForFhirPatientAndFhirConsent(xacmlRequest());
+
+        // Assert
+        assertSame("Patient doesn't match", includedPatient, consentListAndPatient.getPatient());
+        assertEquals("Matching consents don't match", Collections.singletonList(matchingConsent),
+                consentListAndPatient.getMatchingConsents());
+        assertEquals("Searched resources don't match", Collections.singletonList(Consent.class), searchedResources());
+        assertEquals("Cached patient id doesn't match", Optional.of("patient"), fhirPatientIdCache.get(MRN_SYSTEM, MRN));
+    }
+
+    @Test
+    public void testSearchForFhirPatientAndFhirConsent_Combined_No_Consent_And_No_Patient_Throws_PatientNotFound() {
+        // Arrange
+        thrown.expect(PatientNotFound.class);
+        fhirProperties.setSearchMode(FhirProperties.SearchMode.COMBINED);
+        doReturn(searchResult(Collections.emptyList())).when(query).execute();
+
+        // Act
+        fhirServerPolicyProvider.searchForFhirPatientAndFhirConsent(xacmlRequest());
+    }
+
+    @Test
+    public void testSearchForFhirPatientAndFhirConsent_Combined_Consents_Of_Two_Patients_Throws_MultiplePatientsFound() {
+        // Arrange
+        thrown.expect(MultiplePatientsFound.class);
+        fhirProperties.setSearchMode(FhirProperties.SearchMode.COMBINED);
+        final Patient firstPatient = fhirPatient("first");
+        final Patient secondPatient = fhirPatient("second");
+        doReturn(searchResult(Arrays.asList(matchingConsent("first", firstPatient),
+                matchingConsent("second", secondPatient)), firstPatient, secondPatient)).when(query).execute();
+
+        // Act
+        fhirServerPolicyProvider.searchForFhirPatientAndFhirConsent(xacmlRequest());
+    }
+
+    @Test
+    public void testSearchForFhirPatientAndFhirConsent_Cached_Id_Hit_Searches_Consents_Only() {
+        // Arrange
+        fhirPatientIdCache.put(MRN_SYSTEM, MRN, "patient");
+        final Patient includedPatient = fhirPatient("patient");
+        doReturn(searchResult(Collections.singletonList(matchingConsent("consent", includedPatient)), includedPatient))
+                .when(query).execute();
+
+        // Act
+        final ConsentListAndPatientDto consentListAndPatient =
+                fhirServerPolicyProvider.searchForFhirPatientAndFhirConsent(xacmlRequest());
+
+        // Assert
+        assertSame("Patient doesn't match", includedPatient, consentListAndPatient.getPatient());
+        assertEquals("Searched resources don't match", Collections.singletonList(Consent.class), searchedResources());
+        verify(fhirClient, never()).read();
+    }
+
+    @Test
+    public void testSearchForFhirPatientAndFhirConsent_Cached_Id_Hit_Reads_Patient_Not_Included() {
+        // Arrange
+        fhirPatientIdCache.put(MRN_SYSTEM, MRN, "patient");
+        final Patient readPatient = fhirPatient("patient");
+        doReturn(searchResult(Collections.singletonList(matchingConsent("consent", readPatient)))).when(query).execute();
+        doReturn(readPatient).when((IReadExecutable<?>) read).execute();
+
+        // Act
+        final ConsentListAndPatientDto consentListAndPatient =
+                fhirServerPolicyProvider.searchForFhirPatientAndFhirConsent(xacmlRequest());
+
+        // Assert
+        assertSame("Patient doesn't match", readPatient, consentListAndPatient.getPatient());
+        assertEquals("Searched resources don't match", Collections.singletonList(Consent.class), searchedResources());
+        verify((IReadTyped<?>) read).withId("patient");
+    }
+
+    @Test
+    public void testSearchForFhirPatientAndFhirConsent_Stale_Cached_Id_Searches_Patient_By_Mrn() {
+        // Arrange
+        fhirProperties.setSearchMode(FhirProperties.SearchMode.SEPARATE);
+        fhirPatientIdCache.put(MRN_SYSTEM, MRN, "deleted");
+        final Patient currentPatient = fhirPatient("current");
+        doReturn(searchResult(Collections.singletonList(matchingConsent("deleted", fhirPatient("deleted")))))
+                .doReturn(searchResult(Collections.emptyList(), currentPatient))
+                .doReturn(searchResult(Collections.singletonList(matchingConsent("current", currentPatient))))
+                .when(query).execute();
+        doThrow(new ResourceNotFoundException("Patient/deleted")).when((IReadExecutable<?>) read).execute();
+
+        // Act
+        final ConsentListAndPatientDto consentListAndPatient =
+                fhirServerPolicyProvider.searchForFhirPatientAndFhirConsent(xacmlRequest());
+
+        // Assert
+        assertSame("Patient doesn't match", currentPatient, consentListAndPatient.getPatient());
+        assertEquals("Searched resources don't match", Arrays.asList(Consent.class, Patient.class, Consent.class),
+                searchedResources());
+        assertEquals("Cached patient id doesn't match", Optional.of("current"), fhirPatientIdCache.get(MRN_SYSTEM, MRN));
+    }
+
+    @Test
+    public void testSearchForFhirPatientAndFhirConsent_Cached_Id_Without_Consents_Throws_NoConsentFoundException() {
+        // Arrange
+        fhirPatientIdCache.put(MRN_SYSTEM, MRN, "patient");
+        doReturn(searchResult(Collections.emptyList())).when(query).execute();
+        doReturn(fhirPatient("patient")).when((IReadExecutable<?>) read).execute();
+
+        // Act
+        try {
+            fhirServerPolicyProvider.searchForFhirPatientAndFhirConsent(xacmlRequest());
+            fail("NoConsentFoundException must be thrown");
+        } catch (NoConsentFoundException e) {
+            // expected
+        }
+
+        // Assert
+        assertEquals("Searched resources don't match", Collections.singletonList(Consent.class), searchedResources());
+        assertEquals("Cached patient id doesn't match", Optional.of("patient"), fhirPatientIdCache.get(MRN_SYSTEM, MRN));
+    }
+
+    @Test
+    public void testSearchForFhirPatientAndFhirConsent_Cached_Id_Miss_Throws_PatientNotFound() {
+        // Arrange
+        thrown.expect(PatientNotFound.class);
+        fhirProperties.setSearchMode(FhirProperties.SearchMode.COMBINED);
+        fhirPatientIdCache.put(MRN_SYSTEM, MRN, "deleted");
+        doReturn(searchResult(Collections.emptyList())).when(query).execute();
+        doThrow(new ResourceNotFoundException("Patient/deleted")).when((IReadExecutable<?>) read).execute();
+
+        // Act
+        fhirServerPolicyProvider.searchForFhirPatientAndFhirConsent(xacmlRequest());
+    }
+
+    @Test
+    public void testSearchForFhirPatientAndFhirConsent_Cached_Id_Miss_Throws_MultiplePatientsFound() {
+        // Arrange
+        thrown.expect(MultiplePatientsFound.class);
+        fhirProperties.setSearchMode(FhirProperties.SearchMode.SEPARATE);
+        fhirPatientIdCache.put(MRN_SYSTEM, MRN, "patient");
+        doReturn(searchResult(Collections.emptyList()))
+                .doReturn(searchResult(Collections.emptyList(), fhirPatient("patient"), fhirPatient("other")))
+                .when(query).execute();
+        doThrow(new ResourceGoneException("Patient/patient")).when((IReadExecutable<?>) read).execute();
+
+        // Act
+        fhirServerPolicyProvider.searchForFhirPatientAndFhirConsent(xacmlRequest());
+    }
+
+    private List<Class<?>> searchedResources() {
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Class<? extends IBaseResource>> resourceTypes =
+                (ArgumentCaptor) ArgumentCaptor.forClass(Class.class);
+        verify((IUntypedQuery<?>) query, atLeastOnce()).forResource(resourceTypes.capture());
+        return new ArrayList<>(resourceTypes.getAllValues());
+    }
+
+    /**
+     * Creates a mock that answers every step of a fluent FHIR client call with itself, so that only the result of the
+     * call needs to be stubbed.
+     */
+    private static <T> T fluentMock(Class<T> type, Class<?>... extraInterfaces) {
+        return mock(type, withSettings().extraInterfaces(extraInterfaces)
+                .defaultAnswer(invocation -> invocation.getMethod().getReturnType().isInstance(invocation.getMock())
+                        ? invocation.getMock()
+                        : RETURNS_DEFAULTS.answer(invocation)));
+    }
+
+    private static XacmlRequestDto xacmlRequest() {
+        return XacmlRequestDto.builder()
+                .recipientNpi(RECIPIENT_NPI)
+                .intermediaryNpi(INTERMEDIARY_NPI)
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root(MRN_SYSTEM).extension(MRN).build())
+                .build();
+    }
+
+    private static Patient fhirPatient(String patientId) {
+        final Patient fhirPatient = new Patient();
+        fhirPatient.setId("Patient/" + patientId);
+        return fhirPatient;
+    }
+
+    /**
+     * Creates an active consent of the given patient that matches the NPIs and the purpose of use of the request.
+     */
+    private static Consent matchingConsent(String consentId, Patient fhirPatient) {
+        final Consent consent = consent("Consent/" + consentId);
+        consent.setStatus(Consent.ConsentState.ACTIVE);
+        consent.setPatient(new Reference(fhirPatient.getIdElement().getValue()));
+        final Practitioner recipient = new Practitioner();
+        recipient.setId("Practitioner/" + RECIPIENT_NPI);
+        final Organization intermediary = new Organization();
+        intermediary.setId("Organization/" + INTERMEDIARY_NPI);
+        addActor(consent, "IRCP", recipient);
+        addActor(consent, "INF", intermediary);
+        consent.addPurpose(new Coding().setCode(SubjectPurposeOfUse.HEALTHCARE_TREATMENT.getPurposeFhir()));
+        return consent;
+    }
+
+    private static void addActor(Consent consent, String roleCode, DomainResource provider) {
+        final Reference reference = new Reference(provider.getIdElement().getValue());
+        reference.setResource(provider);
+        consent.addActor()
+                .setRole(new CodeableConcept().addCoding(new Coding().setCode(roleCode)))
+                .setReference(reference);
+    }
+
+    /**
+     * Creates a single page search result of the given consents, with the given resources included. Without
+     * consents, it stands for the result of a patient search as well.
+     */
+    private static Bundle searchResult(List<Consent> consents, Resource... includedResources) {
+        final Bundle bundle = new Bundle();
+        for (Consent consent : consents) {
+            bundle.addEntry().setResource(consent).getSearch().setMode(Bundle.SearchEntryMode.MATCH);
+        }
+        for (Resource includedResource : includedResources) {
+            bundle.addEntry().setResource(includedResource).getSearch().setMode(Bundle.SearchEntryMode.INCLUDE);
+        }
+        return bundle;
+    }
+
+    private static Consent consent(String consentId) {
+        final Consent consent = new Consent();
+        consent.setId(consentId);
+        return consent;
+    }
+
+    private ConsentDto consentDto(String consentId) throws ConsentGenException {
+        final ConsentDto consentDto = mock(ConsentDto.class);
+        when(consentDto.getConsentReferenceid()).thenReturn(consentId);
+        when(consentBuilder.buildConsent2Xacml(consentDto)).thenReturn(policy(consentId));
+        return consentDto;
+    }
+
+    private static String policy(String policyId) {
+        return "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicyId=\"" + policyId + "\" " +
+                "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">" +
+                "<Target/><Rule Effect=\"Deny\" RuleId=\"deny-others\"/></Policy>";
+    }
+}
@@ -0,0 +1,96 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties.JdbcPolicyProvider.QueryMode;
+import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
+import gov.samhsa.c2s.contexthandler.service.util.PolicyDtoRowMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class JdbcPolicyProviderImplTest {
+    private static final String POLICY_ID_PREFIX = "mrn_1:&domain&ISO:1111111111:2222222222:";
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private ContextHandlerProperties contextHandlerProperties;
+    private JdbcPolicyProviderImpl jdbcPolicyProvider;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("create table consent (consent_reference_id varchar(255), patient_id varchar(255), " +
+                "xacml_ccd blob, status varchar(50), start_date timestamp, end_date timestamp)");
+        // Starts with the prefix
+        insertConsent("matching", POLICY_ID_PREFIX + "consent");
+        // Sorts right before the upper bound, which increments the last ':' of the prefix to ';'
+        insertConsent("last-before-upper-bound", POLICY_ID_PREFIX + '\uffff');
+        // Equals the upper bound
+        insertConsent("upper-bound", POLICY_ID_PREFIX.substring(0, POLICY_ID_PREFIX.length() - 1) + ";consent");
+        // Another intermediary, which sorts after the prefix
+        insertConsent("other-intermediary", "mrn_1:&domain&ISO:1111111111:3333333333:consent");
+        // Matches the prefix only if '_' is treated as a wildcard
+        insertConsent("wildcard", "mrnX1:&domain&ISO:1111111111:2222222222:consent");
+
+        contextHandlerProperties = new ContextHandlerProperties();
+        final PolicyDtoRowMapper policyDtoRowMapper = new PolicyDtoRowMapper();
+        ReflectionTestUtils.setField(policyDtoRowMapper, "lobHandler", new DefaultLobHandler());
+        ReflectionTestUtils.setField(policyDtoRowMapper, "contextHandlerProperties", contextHandlerProperties);
+        jdbcPolicyProvider = new JdbcPolicyProviderImpl();
+        ReflectionTestUtils.setField(jdbcPolicyProvider, "contextHandlerProperties", contextHandlerProperties);
+        ReflectionTestUtils.setField(jdbcPolicyProvider, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(jdbcPolicyProvider, "policyDtoRowMapper", policyDtoRowMapper);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void testGetPoliciesFromDb_Range_Selects_Only_Policies_Starting_With_Prefix() {
+        // Arrange
+        contextHandlerProperties.getJdbcPolicyProvider().setQueryMode(QueryMode.RANGE);
+
+        // Act
+        final List<PolicyDto> policies = jdbcPolicyProvider.getPoliciesFromDb(POLICY_ID_PREFIX);
+
+        // Assert
+        assertEquals("Policies don't match", "[last-before-upper-bound, matching]", idsOf(policies));
+    }
+
+    @Test
+    public void testGetPoliciesFromDb_Like_Treats_Underscore_As_Wildcard() {
+        // Arrange
+        contextHandlerProperties.getJdbcPolicyProvider().setQueryMode(QueryMode.LIKE);
+
+        // Act
+        final List<PolicyDto> policies = jdbcPolicyProvider.getPoliciesFromDb(POLICY_ID_PREFIX);
+
+        // Assert
+        assertEquals("Policies don't match", "[last-before-upper-bound, matching, wildcard]", idsOf(policies));
+    }
+
+    private void insertConsent(String consentReferenceId, String patientId) {
+        jdbcTemplate.update("insert into consent values (?, ?, ?, 'CONSENT_SIGNED', " +
+                        "dateadd('DAY', -1, now()), dateadd('DAY', 1, now()))",
+                consentReferenceId, patientId, consentReferenceId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String idsOf(List<PolicyDto> policies) {
+        return policies.stream().map(PolicyDto::getId).sorted().collect(Collectors.toList()).toString();
+    }
+}
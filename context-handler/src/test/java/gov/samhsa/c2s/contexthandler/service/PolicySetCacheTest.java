@@ -0,0 +1,114 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.service.dto.PatientIdDto;
+import gov.samhsa.c2s.contexthandler.service.dto.SubjectPurposeOfUse;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.herasaf.xacml.core.policy.impl.PolicySetType;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PolicySetCacheTest {
+    private static final String POLICY_COMBINING_ALG_ID = "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:deny-overrides";
+    private static final String POLICIES_DIGEST = "digest";
+    private static final String OTHER_POLICIES_DIGEST = "otherDigest";
+
+    @Test
+    public void testKey_Equal_For_Same_Request_Attributes_And_Digest() {
+        // Act
+        final PolicySetCache.Key key = PolicySetCache.Key.of(request("4444444444"), POLICY_COMBINING_ALG_ID, POLICIES_DIGEST);
+        final PolicySetCache.Key sameKey = PolicySetCache.Key.of(request("4444444444"), POLICY_COMBINING_ALG_ID, POLICIES_DIGEST);
+
+        // Assert
+        assertEquals("Keys of the same request and consents must be equal", key, sameKey);
+        assertEquals("Hash codes of equal keys must be equal", key.hashCode(), sameKey.hashCode());
+    }
+
+    @Test
+    public void testKey_Differs_By_Recipient_Combining_Algorithm_And_Digest() {
+        // Arrange
+        final PolicySetCache.Key key = PolicySetCache.Key.of(request("4444444444"), POLICY_COMBINING_ALG_ID, POLICIES_DIGEST);
+
+        // Act
+        final PolicySetCache.Key otherRecipient = PolicySetCache.Key.of(request("5555555555"), POLICY_COMBINING_ALG_ID, POLICIES_DIGEST);
+        final PolicySetCache.Key otherAlgorithm = PolicySetCache.Key.of(request("4444444444"),
+                "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:permit-overrides", POLICIES_DIGEST);
+        final PolicySetCache.Key otherDigest = PolicySetCache.Key.of(request("4444444444"), POLICY_COMBINING_ALG_ID, OTHER_POLICIES_DIGEST);
+
+        // Assert
+        assertNotEquals("Keys of different recipients must differ", key, otherRecipient);
+        assertNotEquals("Keys of different combining algorithms must differ", key, otherAlgorithm);
+        assertNotEquals("Keys of different consents must differ", key, otherDigest);
+    }
+
+    @Test
+    public void testKey_Tolerates_Missing_Patient_Id_And_Purpose_Of_Use() {
+        // Arrange
+        final XacmlRequestDto xacmlRequest = XacmlRequestDto.builder().recipientNpi("4444444444").build();
+
+        // Act
+        final PolicySetCache.Key key = PolicySetCache.Key.of(xacmlRequest, POLICY_COMBINING_ALG_ID, POLICIES_DIGEST);
+
+        // Assert
+        assertEquals("Keys of the same request and consents must be equal", key,
+                PolicySetCache.Key.of(xacmlRequest, POLICY_COMBINING_ALG_ID, POLICIES_DIGEST));
+    }
+
+    @Test
+    public void testGet_Returns_Cached_Policy_Set_For_Equal_Key() {
+        // Arrange
+        final PolicySetCache policySetCache = new PolicySetCache(new ContextHandlerProperties());
+        final AtomicInteger combinations = new AtomicInteger();
+
+        // Act
+        final Evaluatable first = policySetCache.get(PolicySetCache.Key.of(request("4444444444"), POLICY_COMBINING_ALG_ID, POLICIES_DIGEST),
+                () -> combine(combinations));
+        final Evaluatable second = policySetCache.get(PolicySetCache.Key.of(request("4444444444"), POLICY_COMBINING_ALG_ID, POLICIES_DIGEST),
+                () -> combine(combinations));
+        final Evaluatable changed = policySetCache.get(PolicySetCache.Key.of(request("4444444444"), POLICY_COMBINING_ALG_ID, OTHER_POLICIES_DIGEST),
+                () -> combine(combinations));
+
+        // Assert
+        assertSame("Policy set must be served from the cache", first, second);
+        assertNotSame("Changed consents must not be served from the cache", first, changed);
+        assertEquals("Number of combinations doesn't match", 2, combinations.get());
+    }
+
+    @Test
+    public void testGet_Bypasses_Cache_When_Disabled() {
+        // Arrange
+        final ContextHandlerProperties properties = new ContextHandlerProperties();
+        properties.getPolicySetCache().setEnabled(false);
+        final PolicySetCache policySetCache = new PolicySetCache(properties);
+        final PolicySetCache.Key key = PolicySetCache.Key.of(request("4444444444"), POLICY_COMBINING_ALG_ID, POLICIES_DIGEST);
+        final AtomicInteger combinations = new AtomicInteger();
+
+        // Act
+        policySetCache.get(key, () -> combine(combinations));
+        policySetCache.get(key, () -> combine(combinations));
+
+        // Assert
+        assertEquals("Number of combinations doesn't match", 2, combinations.get());
+    }
+
+    private static XacmlRequestDto request(String recipientNpi) {
+        return XacmlRequestDto.builder()
+                .recipientNpi(recipientNpi)
+                .intermediaryNpi("1111111111")
+                .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+                .patientId(PatientIdDto.builder().root("1.1.1.1.1.1.1.1").extension("PUI100000000001").build())
+                .build();
+    }
+
+    private static Evaluatable combine(AtomicInteger combinations) {
+        combinations.incrementAndGet();
+        return new PolicySetType();
+    }
+}
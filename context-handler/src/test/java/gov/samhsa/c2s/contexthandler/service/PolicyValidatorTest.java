@@ -0,0 +1,144 @@
+package gov.samhsa.c2s.contexthandler.service;
+
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties.PolicyValidation.Mode;
+import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
+import org.herasaf.xacml.core.SyntaxException;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.herasaf.xacml.core.simplePDP.initializers.InitializerExecutor;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class PolicyValidatorTest {
+    private static final String POLICY_ID = "consentReferenceId";
+    private static final String POLICY_XACML = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" " +
+            "PolicyId=\"" + POLICY_ID + "\" " +
+            "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">" +
+            "<Target/><Rule Effect=\"Deny\" RuleId=\"deny-others\"/></Policy>";
+    // Unmarshals, but the schema does not allow the unknown attribute
+    private static final String POLICY_XACML_NOT_CONFORMING_TO_SCHEMA = POLICY_XACML.replace("<Policy ", "<Policy Unknown=\"value\" ");
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @BeforeClass
+    public static void runInitializers() {
+        InitializerExecutor.runInitializers();
+    }
+
+    @Test
+    public void testValidateAndUnmarshal_Off_By_Default_Accepts_Unmarshallable_Policy() throws Exception {
+        // Arrange
+        final PolicyValidator policyValidator = spy(new PolicyValidator(new ContextHandlerProperties()));
+
+        // Act
+        final Evaluatable evaluatable = policyValidator.validateAndUnmarshal(policy(POLICY_XACML_NOT_CONFORMING_TO_SCHEMA));
+
+        // Assert
+        assertEquals("Policy id doesn't match", POLICY_ID, evaluatable.getId().toString());
+        verify(policyValidator, never()).validateAgainstSchema(any(PolicyDto.class));
+    }
+
+    @Test
+    public void testValidateAndUnmarshal_Off_Never_Checks_Schema() throws Exception {
+        // Arrange
+        final PolicyValidator policyValidator = spy(new PolicyValidator(properties(Mode.OFF)));
+
+        // Act
+        policyValidator.validateAndUnmarshal(policy(POLICY_XACML_NOT_CONFORMING_TO_SCHEMA));
+        policyValidator.validateAndUnmarshal(policy(POLICY_XACML_NOT_CONFORMING_TO_SCHEMA));
+
+        // Assert
+        verify(policyValidator, never()).validateAgainstSchema(any(PolicyDto.class));
+    }
+
+    @Test
+    public void testValidateAndUnmarshal_Always_Checks_Schema_Every_Time() throws Exception {
+        // Arrange
+        final PolicyValidator policyValidator = spy(new PolicyValidator(properties(Mode.ALWAYS)));
+
+        // Act
+        policyValidator.validateAndUnmarshal(policy(POLICY_XACML));
+        policyValidator.validateAndUnmarshal(policy(POLICY_XACML));
+
+        // Assert
+        verify(policyValidator, times(2)).validateAgainstSchema(any(PolicyDto.class));
+    }
+
+    @Test
+    public void testValidateAndUnmarshal_On_First_Sight_Checks_Schema_Once_Per_Content() throws Exception {
+        // Arrange
+        final PolicyValidator policyValidator = spy(new PolicyValidator(properties(Mode.ON_FIRST_SIGHT)));
+
+        // Act
+        final Evaluatable first = policyValidator.validateAndUnmarshal(policy(POLICY_XACML));
+        final Evaluatable second = policyValidator.validateAndUnmarshal(policy(POLICY_XACML));
+        policyValidator.validateAndUnmarshal(policy(POLICY_XACML.replace(POLICY_ID, "otherPolicyId")));
+
+        // Assert
+        verify(policyValidator, times(2)).validateAgainstSchema(any(PolicyDto.class));
+        assertNotSame("A digest cache hit must still unmarshal the policy", first, second);
+        assertEquals("Policy id doesn't match", POLICY_ID, second.getId().toString());
+    }
+
+    @Test
+    public void testValidateAndUnmarshal_On_First_Sight_Rechecks_Policy_That_Failed() throws Exception {
+        // Arrange
+        final PolicyValidator policyValidator = spy(new PolicyValidator(properties(Mode.ON_FIRST_SIGHT)));
+        try {
+            policyValidator.validateAndUnmarshal(policy(POLICY_XACML_NOT_CONFORMING_TO_SCHEMA));
+        } catch (SyntaxException e) {
+            // expected
+        }
+        thrown.expect(SyntaxException.class);
+
+        // Act
+        policyValidator.validateAndUnmarshal(policy(POLICY_XACML_NOT_CONFORMING_TO_SCHEMA));
+    }
+
+    @Test
+    public void testValidateAndUnmarshal_Returns_The_Unmarshalled_Evaluatable() throws Exception {
+        // Arrange
+        final PolicyValidator policyValidator = new PolicyValidator(properties(Mode.ALWAYS));
+
+        // Act
+        final Evaluatable evaluatable = policyValidator.validateAndUnmarshal(policy(POLICY_XACML));
+
+        // Assert
+        assertEquals("Policy id doesn't match", POLICY_ID, evaluatable.getId().toString());
+    }
+
+    @Test
+    public void testValidateAndUnmarshal_Throws_SyntaxException_When_Not_Unmarshallable() throws Exception {
+        // Arrange
+        thrown.expect(SyntaxException.class);
+        final PolicyValidator policyValidator = new PolicyValidator(new ContextHandlerProperties());
+
+        // Act
+        policyValidator.validateAndUnmarshal(policy("<NotAPolicy/>"));
+    }
+
+    private static ContextHandlerProperties properties(Mode mode) {
+        final ContextHandlerProperties properties = new ContextHandlerProperties();
+        properties.getPolicyValidation().setMode(mode);
+        return properties;
+    }
+
+    private static PolicyDto policy(String xacml) {
+        final PolicyDto policy = new PolicyDto();
+        policy.setPolicy(xacml.getBytes(StandardCharsets.UTF_8));
+        return policy;
+    }
+}
@@ -0,0 +1,169 @@
+package gov.samhsa.c2s.contexthandler.service.audit;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.samhsa.c2s.common.audit.AuditClient;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties.AuditQueue.OverflowPolicy;
+import gov.samhsa.c2s.contexthandler.service.EnforcementMetrics;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.herasaf.xacml.core.policy.PolicyMarshaller;
+import org.herasaf.xacml.core.simplePDP.initializers.InitializerExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PolicyAuditQueueTest {
+    private static final int CAPACITY = 2;
+    private static final String POLICY_XACML = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" " +
+            "PolicyId=\"consentReferenceId\" " +
+            "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">" +
+            "<Target/><Rule Effect=\"Deny\" RuleId=\"deny-others\"/></Policy>";
+
+    private static Evaluatable policy;
+
+    private final AuditClient auditClient = mock(AuditClient.class);
+    private final ContextHandlerProperties contextHandlerProperties = new ContextHandlerProperties();
+    private PolicyAuditQueue policyAuditQueue;
+
+    @BeforeClass
+    public static void unmarshalPolicy() throws Exception {
+        InitializerExecutor.runInitializers();
+        policy = PolicyMarshaller.unmarshal(new StringReader(POLICY_XACML));
+    }
+
+    @Before
+    public void setUp() {
+        contextHandlerProperties.getAuditQueue().setCapacity(CAPACITY);
+        contextHandlerProperties.getAuditQueue().setBlockTimeoutInMs(50);
+        when(auditClient.createPredicateMap()).thenAnswer(invocation -> new HashMap<>());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (policyAuditQueue != null) {
+            policyAuditQueue.stop();
+        }
+    }
+
+    @Test
+    public void testOffer_Drop_Newest_Keeps_Queued_Events() throws Exception {
+        // Arrange
+        policyAuditQueue = policyAuditQueue(OverflowPolicy.DROP_NEWEST);
+
+        // Act
+        offer("first", "second", "third");
+
+        // Assert
+        assertEquals("Dropped events don't match", 1L, metric("dropped"));
+        assertEquals("Shipped messages don't match", Arrays.asList("first", "second"), startAndStop());
+    }
+
+    @Test
+    public void testOffer_Drop_Oldest_Makes_Room_For_New_Event() throws Exception {
+        // Arrange
+        policyAuditQueue = policyAuditQueue(OverflowPolicy.DROP_OLDEST);
+
+        // Act
+        offer("first", "second", "third");
+
+        // Assert
+        assertEquals("Dropped events don't match", 1L, metric("dropped"));
+        assertEquals("Shipped messages don't match", Arrays.asList("second", "third"), startAndStop());
+    }
+
+    @Test
+    public void testOffer_Block_Drops_New_Event_After_Block_Timeout() throws Exception {
+        // Arrange
+        policyAuditQueue = policyAuditQueue(OverflowPolicy.BLOCK);
+        offer("first", "second");
+        final long start = System.nanoTime();
+
+        // Act
+        offer("third");
+
+        // Assert
+        assertTrue("Offer must wait for the block timeout", System.nanoTime() - start >= 50_000_000L);
+        assertEquals("Dropped events don't match", 1L, metric("dropped"));
+        assertEquals("Shipped messages don't match", Arrays.asList("first", "second"), startAndStop());
+    }
+
+    @Test
+    public void testStop_Ships_Queued_Events_Before_Returning() throws Exception {
+        // Arrange
+        policyAuditQueue = policyAuditQueue(OverflowPolicy.DROP_NEWEST);
+        offer("first", "second");
+
+        // Act
+        final List<String> shippedMessages = startAndStop();
+
+        // Assert
+        assertEquals("Shipped messages don't match", Arrays.asList("first", "second"), shippedMessages);
+        assertEquals("Shipped events don't match", 2L, metric("shipped"));
+        assertEquals("Queue depth doesn't match", 0, metric("depth"));
+    }
+
+    @Test
+    public void testOffer_Ignores_Events_Without_Audit_Client() {
+        // Arrange
+        policyAuditQueue = new PolicyAuditQueue(Optional.empty(), enforcementMetrics(), contextHandlerProperties);
+
+        // Act
+        offer("first");
+
+        // Assert
+        assertEquals("Queue depth doesn't match", 0, metric("depth"));
+    }
+
+    private PolicyAuditQueue policyAuditQueue(OverflowPolicy overflowPolicy) {
+        contextHandlerProperties.getAuditQueue().setOverflowPolicy(overflowPolicy);
+        return new PolicyAuditQueue(Optional.of(auditClient), enforcementMetrics(), contextHandlerProperties);
+    }
+
+    private static EnforcementMetrics enforcementMetrics() {
+        return new EnforcementMetrics(new MetricRegistry());
+    }
+
+    private void offer(String... messageIds) {
+        for (String messageId : messageIds) {
+            policyAuditQueue.offer(new PolicyAuditEvent(this, messageId, "patientId", policy));
+        }
+    }
+
+    /**
+     * Starts the worker and stops it right away, which ships the queued events, then returns the message ids of the
+     * shipped events in shipping order.
+     */
+    private List<String> startAndStop() throws Exception {
+        policyAuditQueue.start();
+        policyAuditQueue.stop();
+        final ArgumentCaptor<String> messageIds = ArgumentCaptor.forClass(String.class);
+        verify(auditClient, times(Math.toIntExact((Long) metric("shipped"))))
+                .audit(any(), messageIds.capture(), any(), any(), any());
+        return messageIds.getAllValues();
+    }
+
+    private Object metric(String name) {
+        return policyAuditQueue.metrics().stream()
+                .filter(metric -> metric.getName().equals("audit.queue." + name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Missing metric: " + name));
+    }
+}
@@ -0,0 +1,69 @@
+package gov.samhsa.c2s.contexthandler.service.util;
+
+import gov.samhsa.c2s.contexthandler.service.xacml.XACMLXPath;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static gov.samhsa.c2s.contexthandler.service.xacml.XACMLXPath.XPATH_POLICY_ID;
+import static gov.samhsa.c2s.contexthandler.service.xacml.XACMLXPath.XPATH_POLICY_SET_ID;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DOMUtilsTest {
+    private static final byte[] POLICY_XACML = ("<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" " +
+            "PolicyId=\"consentReferenceId\" " +
+            "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">" +
+            "<Target/><Rule Effect=\"Deny\" RuleId=\"deny-others\"/></Policy>").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testGetNode_Finds_Policy_Id_On_Repeated_Use() {
+        // Arrange
+        final Document policyDocument = DOMUtils.bytesToDocument(POLICY_XACML);
+
+        // Act
+        final Optional<Node> policyId = DOMUtils.getNode(policyDocument, XPATH_POLICY_ID);
+        final Optional<Node> samePolicyId = DOMUtils.getNode(policyDocument, XPATH_POLICY_ID);
+        final Optional<Node> policySetId = DOMUtils.getNode(policyDocument, XPATH_POLICY_SET_ID);
+
+        // Assert
+        assertEquals("Policy id doesn't match", "consentReferenceId", policyId.get().getNodeValue());
+        assertEquals("Policy id doesn't match", "consentReferenceId", samePolicyId.get().getNodeValue());
+        assertFalse("A policy must not have a policy set id", policySetId.isPresent());
+    }
+
+    @Test
+    public void testGetNode_Precompiled_Expressions_Match_String_Expressions() {
+        // Arrange
+        final Document policyDocument = DOMUtils.bytesToDocument(POLICY_XACML);
+
+        // Act
+        final Optional<Node> policyId = DOMUtils.getNode(policyDocument, XACMLXPath.Expression.POLICY_ID);
+        final Optional<Node> policySetId = DOMUtils.getNode(policyDocument, XACMLXPath.Expression.POLICY_SET_ID);
+
+        // Assert
+        assertEquals("Policy id doesn't match", DOMUtils.getNode(policyDocument, XPATH_POLICY_ID).get().getNodeValue(),
+                policyId.get().getNodeValue());
+        assertFalse("A policy must not have a policy set id", policySetId.isPresent());
+    }
+
+    @Test
+    public void testDocumentToBytes_Keeps_Output_Properties_On_Repeated_Use() {
+        // Arrange
+        final Document policyDocument = DOMUtils.bytesToDocument(POLICY_XACML);
+
+        // Act
+        final byte[] first = DOMUtils.documentToBytes(policyDocument);
+        final byte[] second = DOMUtils.documentToBytes(policyDocument);
+
+        // Assert
+        assertArrayEquals("Serializations of the same document must be equal", first, second);
+        assertTrue("XML declaration must not be omitted",
+                new String(second, StandardCharsets.UTF_8).startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\""));
+    }
+}
@@ -0,0 +1,90 @@
+package gov.samhsa.c2s.contexthandler.service.util;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IGetPage;
+import ca.uhn.fhir.rest.gclient.IGetPageTyped;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FhirBundlePageIteratorTest {
+
+    private final IGenericClient fhirClient = mock(IGenericClient.class);
+    private final IGetPage getPage = mock(IGetPage.class);
+
+    private final Bundle firstPage = page("http://fhir/Consent?page=2");
+    private final Bundle secondPage = page("http://fhir/Consent?page=3");
+    private final Bundle lastPage = page(null);
+
+    @Before
+    public void setUp() {
+        when(fhirClient.loadPage()).thenReturn(getPage);
+        stubNextPage(firstPage, secondPage);
+        stubNextPage(secondPage, lastPage);
+    }
+
+    @Test
+    public void testPages_Follows_Next_Links_Until_Last_Page() {
+        // Act
+        final List<Bundle> pages = new ArrayList<>();
+        for (Bundle page : FhirBundlePageIterator.pages(fhirClient, firstPage)) {
+            pages.add(page);
+        }
+
+        // Assert
+        assertEquals("Pages don't match", Arrays.asList(firstPage, secondPage, lastPage), pages);
+        verify(fhirClient, times(2)).loadPage();
+    }
+
+    @Test
+    public void testPages_Loads_Next_Page_Only_When_Asked_For() {
+        // Arrange
+        final Iterator<Bundle> pages = FhirBundlePageIterator.pages(fhirClient, firstPage).iterator();
+
+        // Act
+        final Bundle page = pages.next();
+
+        // Assert
+        assertSame("First page doesn't match", firstPage, page);
+        verify(fhirClient, never()).loadPage();
+    }
+
+    @Test
+    public void testPages_Null_First_Page_Has_No_Pages() {
+        // Act
+        final boolean hasPages = FhirBundlePageIterator.pages(fhirClient, null).iterator().hasNext();
+
+        // Assert
+        assertFalse("There must be no pages", hasPages);
+        verify(fhirClient, never()).loadPage();
+    }
+
+    private void stubNextPage(Bundle page, Bundle nextPage) {
+        final IGetPageTyped<?> getPageTyped = mock(IGetPageTyped.class);
+        doReturn(getPageTyped).when(getPage).next(page);
+        doReturn(nextPage).when(getPageTyped).execute();
+    }
+
+    private static Bundle page(String nextUrl) {
+        final Bundle page = new Bundle();
+        if (nextUrl != null) {
+            page.addLink().setRelation(Bundle.LINK_NEXT).setUrl(nextUrl);
+        }
+        return page;
+    }
+}
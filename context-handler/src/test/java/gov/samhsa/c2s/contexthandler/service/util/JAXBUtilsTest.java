@@ -0,0 +1,115 @@
+package gov.samhsa.c2s.contexthandler.service.util;
+
+import gov.samhsa.c2s.contexthandler.service.dto.PatientIdDto;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class JAXBUtilsTest {
+    private static final int THREADS = 8;
+    private static final int ROUND_TRIPS_PER_THREAD = 200;
+
+    @Test
+    public void testGetContext_Returns_Shared_Context() throws Exception {
+        // Act
+        final Object first = JAXBUtils.getContext(PatientIdDto.class);
+        final Object second = JAXBUtils.getContext(PatientIdDto.class);
+
+        // Assert
+        assertSame("JAXB context doesn't match", first, second);
+    }
+
+    @Test
+    public void testMarshal_And_UnmarshalFromXml_Round_Trip() throws Exception {
+        // Arrange
+        final PatientIdDto patientId = PatientIdDto.builder().root("1.1.1").extension("MRN").build();
+
+        // Act
+        final PatientIdDto roundTripped = JAXBUtils.unmarshalFromXml(PatientIdDto.class, JAXBUtils.marshal(patientId));
+
+        // Assert
+        assertEquals("Patient id doesn't match", patientId, roundTripped);
+    }
+
+    @Test
+    public void testMarshal_And_Unmarshal_Streams_Round_Trip() throws Exception {
+        // Arrange
+        final PatientIdDto patientId = PatientIdDto.builder().root("1.1.1").extension("MRN").build();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // Act
+        JAXBUtils.marshal(patientId, outputStream);
+        final PatientIdDto roundTripped = JAXBUtils.unmarshal(PatientIdDto.class,
+                new ByteArrayInputStream(outputStream.toByteArray()));
+
+        // Assert
+        assertEquals("Patient id doesn't match", patientId, roundTripped);
+        assertEquals("Marshalled XML doesn't match", JAXBUtils.marshal(patientId),
+                new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMarshal_And_Unmarshal_Streams_Concurrent_Borrow_And_Release() throws Exception {
+        // Act and Assert
+        roundTripConcurrently(patientId -> {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            JAXBUtils.marshal(patientId, outputStream);
+            return JAXBUtils.unmarshal(PatientIdDto.class, new ByteArrayInputStream(outputStream.toByteArray()));
+        });
+    }
+
+    @Test
+    public void testMarshal_And_UnmarshalFromXml_Concurrent_Borrow_And_Release() throws Exception {
+        // Act and Assert
+        roundTripConcurrently(patientId -> JAXBUtils.unmarshalFromXml(PatientIdDto.class, JAXBUtils.marshal(patientId)));
+    }
+
+    /**
+     * Round-trips distinct patient ids with the given round trip from several threads at once, and fails if any round
+     * trip does not give back its own patient id.
+     */
+    private static void roundTripConcurrently(RoundTrip roundTrip) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            final String root = "1.1." + thread;
+            futures.add(executor.submit((Callable<Void>) () -> {
+                start.await();
+                for (int i = 0; i < ROUND_TRIPS_PER_THREAD; i++) {
+                    // Each thread marshals its own values, so a marshaller shared between two threads would mix them
+                    final PatientIdDto patientId = PatientIdDto.builder().root(root).extension("MRN" + i).build();
+                    assertEquals("Patient id doesn't match", patientId, roundTrip.apply(patientId));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> future : futures) {
+                // Rethrows the assertion error of a worker as an ExecutionException
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface RoundTrip {
+        PatientIdDto apply(PatientIdDto patientId) throws Exception;
+    }
+}
@@ -0,0 +1,63 @@
+package gov.samhsa.c2s.contexthandler.service.util;
+
+import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class PolicyDigestUtilsTest {
+
+    @Test
+    public void testDigest_Equal_For_Equal_Content() {
+        // Act
+        final String digest = PolicyDigestUtils.digest(Arrays.asList(policy("<Policy/>"), policy("<Policy2/>")));
+        final String sameDigest = PolicyDigestUtils.digest(Arrays.asList(policy("<Policy/>"), policy("<Policy2/>")));
+
+        // Assert
+        assertEquals("Digests of equal policies must be equal", digest, sameDigest);
+    }
+
+    @Test
+    public void testDigest_Differs_By_Content_And_Order() {
+        // Arrange
+        final String digest = PolicyDigestUtils.digest(Arrays.asList(policy("<Policy/>"), policy("<Policy2/>")));
+
+        // Act
+        final String changed = PolicyDigestUtils.digest(Arrays.asList(policy("<Policy/>"), policy("<Policy3/>")));
+        final String reordered = PolicyDigestUtils.digest(Arrays.asList(policy("<Policy2/>"), policy("<Policy/>")));
+
+        // Assert
+        assertNotEquals("Digests of changed policies must differ", digest, changed);
+        assertNotEquals("Digests of reordered policies must differ", digest, reordered);
+    }
+
+    @Test
+    public void testDigest_Differs_By_Split_Of_Same_Bytes() {
+        // Act
+        final String digest = PolicyDigestUtils.digest(Arrays.asList(policy("ab"), policy("c")));
+        final String otherSplit = PolicyDigestUtils.digest(Arrays.asList(policy("a"), policy("bc")));
+
+        // Assert
+        assertNotEquals("Digests of differently split policies must differ", digest, otherSplit);
+    }
+
+    @Test
+    public void testDigest_Treats_Missing_Content_As_Empty() {
+        // Act
+        final String missing = PolicyDigestUtils.digest(Arrays.asList(new PolicyDto()));
+        final String empty = PolicyDigestUtils.digest(Arrays.asList(policy("")));
+
+        // Assert
+        assertEquals("Digest of missing content doesn't match", empty, missing);
+    }
+
+    private static PolicyDto policy(String content) {
+        final PolicyDto policy = new PolicyDto();
+        policy.setPolicy(content.getBytes(StandardCharsets.UTF_8));
+        return policy;
+    }
+}
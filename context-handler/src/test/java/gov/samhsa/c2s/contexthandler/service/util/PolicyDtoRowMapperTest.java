@@ -0,0 +1,89 @@
+package gov.samhsa.c2s.contexthandler.service.util;
+
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.service.dto.PolicyDto;
+import gov.samhsa.c2s.contexthandler.service.exception.PolicyProviderException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.sql.ResultSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PolicyDtoRowMapperTest {
+    private static final String CONSENT_REFERENCE_ID = "consentReferenceId";
+    private static final int MAX_CONSENT_SIZE = 10000;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final ResultSet resultSet = mock(ResultSet.class);
+    private final LobHandler lobHandler = mock(LobHandler.class);
+    private final PolicyDtoRowMapper policyDtoRowMapper = new PolicyDtoRowMapper();
+
+    @Before
+    public void setUp() throws Exception {
+        final ContextHandlerProperties contextHandlerProperties = new ContextHandlerProperties();
+        contextHandlerProperties.getJdbcPolicyProvider().setMaxConsentSizeInBytes(MAX_CONSENT_SIZE);
+        ReflectionTestUtils.setField(policyDtoRowMapper, "lobHandler", lobHandler);
+        ReflectionTestUtils.setField(policyDtoRowMapper, "contextHandlerProperties", contextHandlerProperties);
+        when(resultSet.getString("consent.consent_reference_id")).thenReturn(CONSENT_REFERENCE_ID);
+    }
+
+    @Test
+    public void testMapRow_Reads_Consent_Of_Maximum_Size() throws Exception {
+        // Arrange
+        // Spans several reads of the buffer
+        final byte[] consent = consentOfSize(MAX_CONSENT_SIZE);
+        when(lobHandler.getBlobAsBinaryStream(resultSet, "consent.xacml_ccd")).thenReturn(new ByteArrayInputStream(consent));
+
+        // Act
+        final PolicyDto policyDto = policyDtoRowMapper.mapRow(resultSet, 0);
+
+        // Assert
+        assertEquals("Policy id doesn't match", CONSENT_REFERENCE_ID, policyDto.getId());
+        assertArrayEquals("Policy doesn't match", consent, policyDto.getPolicy());
+    }
+
+    @Test
+    public void testMapRow_Throws_PolicyProviderException_When_Consent_Exceeds_Maximum_Size() throws Exception {
+        // Arrange
+        thrown.expect(PolicyProviderException.class);
+        thrown.expectMessage(CONSENT_REFERENCE_ID);
+        when(lobHandler.getBlobAsBinaryStream(resultSet, "consent.xacml_ccd"))
+                .thenReturn(new ByteArrayInputStream(consentOfSize(MAX_CONSENT_SIZE + 1)));
+
+        // Act
+        policyDtoRowMapper.mapRow(resultSet, 0);
+    }
+
+    @Test
+    public void testMapRow_Null_Consent_Maps_To_Null_Policy() throws Exception {
+        // Arrange
+        when(lobHandler.getBlobAsBinaryStream(resultSet, "consent.xacml_ccd")).thenReturn(null);
+
+        // Act
+        final PolicyDto policyDto = policyDtoRowMapper.mapRow(resultSet, 0);
+
+        // Assert
+        assertEquals("Policy id doesn't match", CONSENT_REFERENCE_ID, policyDto.getId());
+        assertNull("Policy must be null", policyDto.getPolicy());
+    }
+
+    private static byte[] consentOfSize(int size) {
+        final byte[] consent = new byte[size];
+        for (int i = 0; i < size; i++) {
+            consent[i] = (byte) ('a' + i % 26);
+        }
+        return consent;
+    }
+}
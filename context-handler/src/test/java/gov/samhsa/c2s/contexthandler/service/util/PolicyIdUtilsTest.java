@@ -0,0 +1,92 @@
+package gov.samhsa.c2s.contexthandler.service.util;
+
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.herasaf.xacml.core.policy.PolicyMarshaller;
+import org.herasaf.xacml.core.simplePDP.initializers.InitializerExecutor;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class PolicyIdUtilsTest {
+    private static final String POLICY_SET_XACML = "<PolicySet xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" " +
+            "PolicySetId=\"outerPolicySet\" " +
+            "PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:deny-overrides\">" +
+            "<Target/>" +
+            policy("outerPolicy") +
+            "<PolicySet PolicySetId=\"nestedPolicySet\" " +
+            "PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:deny-overrides\">" +
+            "<Target/>" +
+            policy("nestedPolicy") +
+            "<PolicyIdReference>referencedPolicy</PolicyIdReference>" +
+            "</PolicySet>" +
+            "</PolicySet>";
+
+    @BeforeClass
+    public static void runInitializers() {
+        InitializerExecutor.runInitializers();
+    }
+
+    @Test
+    public void testCollectPolicyIds_Nested_Policy_Sets_Match_PolicyId_Attributes() throws Exception {
+        // Arrange
+        final Evaluatable policySet = PolicyMarshaller.unmarshal(new StringReader(POLICY_SET_XACML));
+
+        // Act
+        final Set<String> policyIds = PolicyIdUtils.collectPolicyIds(policySet);
+
+        // Assert
+        assertEquals("Policy ids don't match", new HashSet<>(Arrays.asList("outerPolicy", "nestedPolicy")), policyIds);
+        assertEquals("Policy ids don't match the PolicyId attributes of the marshalled policy set",
+                policyIdAttributes(policySet), policyIds);
+    }
+
+    @Test
+    public void testCollectPolicyIds_Single_Policy() throws Exception {
+        // Arrange
+        final Evaluatable policy = PolicyMarshaller.unmarshal(new StringReader(policy("singlePolicy")));
+
+        // Act
+        final Set<String> policyIds = PolicyIdUtils.collectPolicyIds(policy);
+
+        // Assert
+        assertEquals("Policy ids don't match", policyIdAttributes(policy), policyIds);
+    }
+
+    /**
+     * Finds the policy ids the way they were found before, with {@code //@PolicyId} on the marshalled policy.
+     */
+    private static Set<String> policyIdAttributes(Evaluatable evaluatable) throws Exception {
+        final StringWriter writer = new StringWriter();
+        PolicyMarshaller.marshal(evaluatable, writer);
+        final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        final Document document = documentBuilderFactory.newDocumentBuilder()
+                .parse(new InputSource(new StringReader(writer.toString())));
+        final NodeList attributes = (NodeList) XPathFactory.newInstance().newXPath()
+                .evaluate("//@PolicyId", document, XPathConstants.NODESET);
+        final Set<String> policyIds = new HashSet<>();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            policyIds.add(attributes.item(i).getNodeValue());
+        }
+        return policyIds;
+    }
+
+    private static String policy(String policyId) {
+        return "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicyId=\"" + policyId + "\" " +
+                "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">" +
+                "<Target/><Rule Effect=\"Deny\" RuleId=\"deny-others\"/></Policy>";
+    }
+}
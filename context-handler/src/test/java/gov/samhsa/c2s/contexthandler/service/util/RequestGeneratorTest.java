@@ -0,0 +1,102 @@
+package gov.samhsa.c2s.contexthandler.service.util;
+
+import gov.samhsa.c2s.common.marshaller.SimpleMarshallerImpl;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties;
+import gov.samhsa.c2s.contexthandler.config.ContextHandlerProperties.PdpRequest.GenerationMode;
+import gov.samhsa.c2s.contexthandler.config.FhirProperties;
+import gov.samhsa.c2s.contexthandler.service.dto.PatientIdDto;
+import gov.samhsa.c2s.contexthandler.service.dto.SubjectPurposeOfUse;
+import gov.samhsa.c2s.contexthandler.service.dto.XacmlRequestDto;
+import org.herasaf.xacml.core.context.impl.AttributeType;
+import org.herasaf.xacml.core.context.impl.RequestType;
+import org.herasaf.xacml.core.simplePDP.initializers.InitializerExecutor;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class RequestGeneratorTest {
+    private static final XacmlRequestDto XACML_REQUEST = XacmlRequestDto.builder()
+            .recipientNpi("4444444444")
+            .intermediaryNpi("1111111111")
+            .purposeOfUse(SubjectPurposeOfUse.HEALTHCARE_TREATMENT)
+            .patientId(PatientIdDto.builder().root("1.1.1.1.1.1.1.1").extension("PUI100000000001").build())
+            .build();
+
+    @BeforeClass
+    public static void runInitializers() {
+        InitializerExecutor.runInitializers();
+    }
+
+    @Test
+    public void testGenerateRequest_Direct_And_Xsl_Produce_Equivalent_Requests() {
+        // Arrange
+        final RequestGenerator directRequestGenerator = requestGenerator(GenerationMode.DIRECT);
+        final RequestGenerator xslRequestGenerator = requestGenerator(GenerationMode.XSL);
+
+        // Act
+        final RequestType directRequest = directRequestGenerator.generateRequest(XACML_REQUEST);
+        final RequestType xslRequest = xslRequestGenerator.generateRequest(XACML_REQUEST);
+
+        // Assert
+        assertNotNull("XSL request must be generated", xslRequest);
+        assertEquals("Number of subjects doesn't match", xslRequest.getSubjects().size(), directRequest.getSubjects().size());
+        assertEquals("Subject attributes don't match",
+                describe(xslRequest.getSubjects().get(0).getAttributes()),
+                describe(directRequest.getSubjects().get(0).getAttributes()));
+        assertEquals("Number of resources doesn't match", xslRequest.getResources().size(), directRequest.getResources().size());
+        assertEquals("Resource attributes don't match",
+                describe(xslRequest.getResources().get(0).getAttributes()),
+                describe(directRequest.getResources().get(0).getAttributes()));
+        assertEquals("Action attributes don't match",
+                describe(xslRequest.getAction().getAttributes()),
+                describe(directRequest.getAction().getAttributes()));
+
+        // The environment carries the time of generation, so only its form is compared
+        final AttributeType xslEnvironment = xslRequest.getEnvironment().getAttributes().get(0);
+        final AttributeType directEnvironment = directRequest.getEnvironment().getAttributes().get(0);
+        assertEquals("Number of environment attributes doesn't match",
+                xslRequest.getEnvironment().getAttributes().size(), directRequest.getEnvironment().getAttributes().size());
+        assertEquals("Environment attribute id doesn't match", xslEnvironment.getAttributeId(), directEnvironment.getAttributeId());
+        assertSame("Environment data type doesn't match", xslEnvironment.getDataType(), directEnvironment.getDataType());
+        OffsetDateTime.parse(value(xslEnvironment));
+        OffsetDateTime.parse(value(directEnvironment));
+    }
+
+    private static RequestGenerator requestGenerator(GenerationMode generationMode) {
+        final ContextHandlerProperties.PdpRequest.Resource resource = new ContextHandlerProperties.PdpRequest.Resource();
+        resource.setTypeCode("34133-9");
+        resource.setStatus("urn:oasis:names:tc:ebxml-regrep:StatusType:Approved");
+        final ContextHandlerProperties.PdpRequest.Action action = new ContextHandlerProperties.PdpRequest.Action();
+        action.setActionId("pepaccess");
+        final ContextHandlerProperties.PdpRequest pdpRequest = new ContextHandlerProperties.PdpRequest();
+        pdpRequest.setResource(resource);
+        pdpRequest.setAction(action);
+        pdpRequest.setGenerationMode(generationMode);
+        final ContextHandlerProperties contextHandlerProperties = new ContextHandlerProperties();
+        contextHandlerProperties.setPdpRequest(pdpRequest);
+        return new RequestGenerator(new SimpleMarshallerImpl(), contextHandlerProperties, new FhirProperties());
+    }
+
+    private static List<String> describe(List<AttributeType> attributes) {
+        final List<String> descriptions = new ArrayList<>();
+        for (final AttributeType attribute : attributes) {
+            descriptions.add(attribute.getAttributeId() + "|" + attribute.getDataType() + "|" + value(attribute));
+        }
+        return descriptions;
+    }
+
+    private static String value(AttributeType attribute) {
+        return attribute.getAttributeValues().stream()
+                .flatMap(attributeValue -> attributeValue.getContent().stream())
+                .map(Object::toString)
+                .collect(Collectors.joining());
+    }
+}
@@ -0,0 +1,106 @@
+package gov.samhsa.c2s.contexthandler.service.xacml;
+
+import org.herasaf.xacml.core.PolicyRepositoryException;
+import org.herasaf.xacml.core.context.impl.RequestType;
+import org.herasaf.xacml.core.policy.Evaluatable;
+import org.herasaf.xacml.core.policy.PolicyMarshaller;
+import org.herasaf.xacml.core.policy.impl.EvaluatableIDImpl;
+import org.herasaf.xacml.core.simplePDP.initializers.InitializerExecutor;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RequestScopedPolicyRetrievalPointTest {
+    private static final String POLICY_SET_ID = "outerPolicySet";
+    private static final String NESTED_POLICY_SET_ID = "nestedPolicySet";
+    private static final String NESTED_POLICY_ID = "nestedPolicy";
+
+    private static final String POLICY_SET_XACML = "<PolicySet xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" " +
+            "PolicySetId=\"" + POLICY_SET_ID + "\" " +
+            "PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:deny-overrides\">" +
+            "<Target/>" +
+            "<PolicySet PolicySetId=\"" + NESTED_POLICY_SET_ID + "\" " +
+            "PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:deny-overrides\">" +
+            "<Target/>" +
+            "<Policy PolicyId=\"" + NESTED_POLICY_ID + "\" " +
+            "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">" +
+            "<Target/><Rule Effect=\"Deny\" RuleId=\"deny-others\"/></Policy>" +
+            "</PolicySet>" +
+            "</PolicySet>";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final RequestScopedPolicyRetrievalPoint policyRetrievalPoint = new RequestScopedPolicyRetrievalPoint();
+
+    @BeforeClass
+    public static void runInitializers() {
+        InitializerExecutor.runInitializers();
+    }
+
+    @Test
+    public void testGetEvaluatable_Finds_Policy_In_Nested_Policy_Set() throws Exception {
+        // Arrange
+        final Evaluatable policySet = PolicyMarshaller.unmarshal(new StringReader(POLICY_SET_XACML));
+
+        // Act
+        final Evaluatable nestedPolicySet = policyRetrievalPoint.withEvaluatables(Collections.singletonList(policySet),
+                () -> policyRetrievalPoint.getEvaluatable(new EvaluatableIDImpl(NESTED_POLICY_SET_ID)));
+        final Evaluatable nestedPolicy = policyRetrievalPoint.withEvaluatables(Collections.singletonList(policySet),
+                () -> policyRetrievalPoint.getEvaluatable(new EvaluatableIDImpl(NESTED_POLICY_ID)));
+
+        // Assert
+        assertEquals("Nested policy set doesn't match", NESTED_POLICY_SET_ID, nestedPolicySet.getId().toString());
+        assertEquals("Nested policy doesn't match", NESTED_POLICY_ID, nestedPolicy.getId().toString());
+    }
+
+    @Test
+    public void testGetEvaluatable_Throws_PolicyRepositoryException_When_Not_Found() throws Exception {
+        // Arrange
+        thrown.expect(PolicyRepositoryException.class);
+        final Evaluatable policySet = PolicyMarshaller.unmarshal(new StringReader(POLICY_SET_XACML));
+
+        // Act
+        policyRetrievalPoint.withEvaluatables(Collections.singletonList(policySet),
+                () -> policyRetrievalPoint.getEvaluatable(new EvaluatableIDImpl("unknownPolicy")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetEvaluatables_Returns_Unmodifiable_List() throws Exception {
+        // Arrange
+        final Evaluatable policySet = PolicyMarshaller.unmarshal(new StringReader(POLICY_SET_XACML));
+        final List<Evaluatable> policies = new ArrayList<>();
+        policies.add(policySet);
+        final List<Evaluatable> evaluatables = policyRetrievalPoint.withEvaluatables(
+                policies, () -> policyRetrievalPoint.getEvaluatables(new RequestType()));
+
+        // Act
+        evaluatables.add(policySet);
+    }
+
+    @Test
+    public void testGetEvaluatables_Serves_Policies_Only_During_Evaluation() throws Exception {
+        // Arrange
+        final Evaluatable policySet = PolicyMarshaller.unmarshal(new StringReader(POLICY_SET_XACML));
+
+        // Act
+        final List<Evaluatable> duringEvaluation = policyRetrievalPoint.withEvaluatables(
+                Collections.singletonList(policySet), () -> policyRetrievalPoint.getEvaluatables(new RequestType()));
+        final List<Evaluatable> afterEvaluation = policyRetrievalPoint.getEvaluatables(new RequestType());
+
+        // Assert
+        assertEquals("Number of evaluatables doesn't match", 1, duringEvaluation.size());
+        assertSame("Evaluatable doesn't match", policySet, duringEvaluation.get(0));
+        assertTrue("No evaluatables must be served outside of an evaluation", afterEvaluation.isEmpty());
+    }
+}